@@ -0,0 +1,34 @@
+package bench;
+
+import model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo de evaluar una cartera: riesgo de la cartera de referencia (pocos activos), riesgo de un
+ * vector de pesos denso (forma cuadrática completa, camino vectorial) y retorno.
+ * Con -jvmArgsAppend "--add-modules=jdk.incubator.vector -Dtpo.vectorial=false" se mide el producto punto escalar.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class CalculadorasBench {
+
+    @Benchmark
+    public double riesgoCartera(EstadoMercado s){
+        return CalculadoraRiesgo.riesgoCartera(s.mercado, s.cartera, s.presupuesto);
+    }
+
+    @Benchmark
+    public double riesgoDenso(EstadoMercado s){
+        return CalculadoraRiesgo.riesgo(s.mercado, s.pesosDensos);
+    }
+
+    @Benchmark
+    public double retornoCartera(EstadoMercado s){
+        return CalculadoraRetorno.retornoCartera(s.mercado, s.cartera, s.presupuesto);
+    }
+}
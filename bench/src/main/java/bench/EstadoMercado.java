@@ -0,0 +1,58 @@
+package bench;
+
+import heuristicas.GreedyInicial;
+import io.CargadorDatosJson;
+import model.*;
+import tools.GeneradorMercado;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.*;
+import java.util.Map;
+
+/**
+ * Mercado, perfil y una cartera de referencia compartidos por los benchmarks.
+ * Con 60 activos se usa data/mercado.json (o -Dtpo.mercado=ruta); los tamaños mayores salen de tools.GeneradorMercado.
+ */
+@State(Scope.Benchmark)
+public class EstadoMercado {
+
+    @Param({"60", "250", "1000", "5000"})
+    public int activos;
+
+    @Param({"Conservador", "Moderado", "Agresivo"})
+    public String tipoPerfil;
+
+    @Param({"100000", "1000000"})
+    public double presupuesto;
+
+    @Param({"TRIANGULAR"})
+    public String disposicion;
+
+    Mercado mercado;
+    Perfil perfil;
+    Asignacion cartera;
+    double[] pesosDensos;   // todos los activos con peso (suma 1)
+
+    @Setup(Level.Trial)
+    public void preparar(){
+        var d = MatrizCorrelacion.Disposicion.valueOf(disposicion);
+        mercado = activos == 60 ? CargadorDatosJson.cargarMercado(rutaMercado(), d)
+                                : GeneradorMercado.generar(activos, 42L, 4, d);
+        // mismos límites generales que App
+        perfil = new Perfil(presupuesto, 0.15,
+            Map.of("Accion", 0.70, "Bono", 0.60, "ETF", 0.50),
+            Map.of("Tecnologia", 0.60, "Energia", 0.50, "Salud", 0.50, "Consumo", 0.50),
+            tipoPerfil, 0.0);
+        cartera = GreedyInicial.construir(mercado, perfil);
+        pesosDensos = new double[activos];
+        java.util.Arrays.fill(pesosDensos, 1.0 / activos);
+        mercado.covarianza();   // se arma fuera de la medición
+    }
+
+    private static String rutaMercado(){
+        String ruta = System.getProperty("tpo.mercado");
+        if (ruta != null) return ruta;
+        // se puede correr desde la raíz del repo o desde bench/
+        return Files.exists(Path.of("data/mercado.json")) ? "data/mercado.json" : "../data/mercado.json";
+    }
+}
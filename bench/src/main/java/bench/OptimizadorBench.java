@@ -0,0 +1,66 @@
+package bench;
+
+import heuristicas.BusquedaLocal;
+import heuristicas.GreedyInicial;
+import model.Asignacion;
+import optimizacion.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construcción greedy, búsqueda local (una pasada, sin plazo) y Branch & Bound completos (por activo y
+ * por subconjuntos). Los B&B cortan en maxNodos para que los universos grandes terminen en un tiempo acotado;
+ * comparar corridas solo con el mismo tope.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class OptimizadorBench {
+
+    @Param({"100000"})
+    public long maxNodos;
+
+    /** true mide el costo de recolectar EstadisticasBusqueda */
+    @Param({"false"})
+    public boolean estadisticas;
+
+    /** Entradas de la tabla de transposición por hilo; 0 = sin tabla */
+    @Param({"0"})
+    public int tablaTransposicion;
+
+    /** Hijos por nivel con lotes gruesos; 0 = todos los lotes de montoMin (ver -p presupuesto) */
+    @Param({"0"})
+    public int lotesPorNivel;
+
+    @Benchmark
+    public Asignacion greedy(EstadoMercado s){
+        return GreedyInicial.construir(s.mercado, s.perfil);
+    }
+
+    @Benchmark
+    public Asignacion busquedaLocal(EstadoMercado s){
+        return BusquedaLocal.construir(s.mercado, s.perfil, 1, null);
+    }
+
+    @Benchmark
+    public BBPortafolio.Resultado branchAndBound(EstadoMercado s){
+        OpcionesBusqueda op = OpcionesBusqueda.secuencial();
+        op.maxNodos = maxNodos;
+        op.estadisticas = estadisticas;
+        op.tablaTransposicion = tablaTransposicion;
+        op.lotesPorNivel = lotesPorNivel;
+        return BBPortafolio.maximizarRetorno(s.mercado, s.perfil, op);
+    }
+
+    @Benchmark
+    public BBPortafolio.Resultado subconjuntos(EstadoMercado s){
+        OpcionesBusqueda op = OpcionesBusqueda.secuencial();
+        op.maxNodos = maxNodos;
+        op.estadisticas = estadisticas;
+        return BBSubconjuntos.maximizarRetorno(s.mercado, s.perfil, op);
+    }
+}
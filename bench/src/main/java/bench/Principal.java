@@ -0,0 +1,23 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Punto de entrada del jar de benchmarks: acepta las mismas opciones que JMH
+ * (-p activos=60,250, -rf json, etc.) y siempre agrega el profiler de GC para informar asignación.
+ */
+public final class Principal {
+    private Principal(){}
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options cli = new CommandLineOptions(args);
+        Options op = new OptionsBuilder()
+            .parent(cli)
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(op).run();
+    }
+}
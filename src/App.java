@@ -1,35 +1,42 @@
 import model.Mercado;
 import io.CargadorDatosJson;
+import io.SnapshotMercado;
 import validacion.ValidadorMercado;
 
 import model.Perfil;
 import model.Cliente;
 import validacion.ValidadorPerfil;
 import model.Asignacion;
-import model.Activo;
 
 import heuristicas.SemillaFactible;
 import heuristicas.GreedyInicial;
+import heuristicas.BusquedaLocal;
 import optimizacion.BBPortafolio;
+import optimizacion.CacheSoluciones;
 
 import io.Reporte;
+import io.ProcesadorLote;
 
 import java.util.Map;
-import java.util.LinkedHashMap;
 import java.util.Scanner;
 
 public class App {
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--lote")) {
+            mainLote(args);
+            return;
+        }
         System.out.println(">>> MODO INTERACTIVO <<<");
 
         // === 1) Cargar mercado ===
         final String RUTA_JSON = "datos/mercado.json"; // Ajustá si tu carpeta es "data"
-        Mercado m = CargadorDatosJson.cargarMercado(RUTA_JSON);
+        Mercado m = cargarMercado(RUTA_JSON);
         ValidadorMercado.validar(m);
 
         System.out.println("Activos: " + m.activos.size());
-        System.out.println("Matriz rho: " + m.rho.length + " x " + m.rho[0].length);
+        System.out.println("Matriz rho: " + m.correlaciones.n() + " x " + m.correlaciones.n()
+                           + " (" + m.correlaciones.disposicion() + ", " + m.correlaciones.bytes() / 1024 + " KB)");
         for (int i = 0; i < Math.min(5, m.activos.size()); i++) {
             System.out.println(" - " + m.activos.get(i));
         }
@@ -122,61 +129,59 @@ public class App {
         Reporte.imprimirResumen(m, perfil, aGreedy);
 
         // === 7) BRANCH & BOUND ===
-        BBPortafolio.Resultado res = BBPortafolio.maximizarRetorno(m, perfil);
+        optimizacion.OpcionesBusqueda op = optimizacion.OpcionesBusqueda.secuencial();
+        op.estadisticas = true;
+        BBPortafolio.Resultado res = BBPortafolio.maximizarRetorno(m, perfil, op);
         System.out.println("\n--- BRANCH & BOUND ---");
         Reporte.imprimirResumen(m, perfil, res.mejor);
-        System.out.println("Nodos visitados: " + res.nodosVisitados);
+        System.out.println("Nodos visitados: " + res.nodosVisitados + " (presolve descartó " + res.activosDescartados + " activos)");
+        System.out.println("Búsqueda: " + res.estadisticas);
 
         // === 8) Alternativas ===
         System.out.println("\n===== Alternativa 1: Portafolio Greedy =====");
         Reporte.imprimirResumen(m, perfil, aGreedy);
 
-        System.out.println("\n===== Alternativa 2: Portafolio Mutado =====");
-        Asignacion alt2 = mutarAsignacion(res.mejor, m, perfil);
+        System.out.println("\n===== Alternativa 2: Búsqueda local multi-arranque =====");
+        Asignacion alt2 = BusquedaLocal.construir(m, perfil, Runtime.getRuntime().availableProcessors(),
+                java.time.Duration.ofMillis(500));
         Reporte.imprimirResumen(m, perfil, alt2);
 
         sc.close();
     }
 
+    // === Modo lote: App --lote [entrada.jsonl] [salida.jsonl] [paralelismo] [mercado.json | snapshot] ===
+    private static void mainLote(String[] args) {
+        String entrada  = args.length > 1 ? args[1] : "requests.jsonl";
+        String salida   = args.length > 2 ? args[2] : "resultados.jsonl";
+        int paralelismo = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        String rutaJson = args.length > 4 ? args[4] : "data/mercado.json";
+
+        System.out.println(">>> MODO LOTE <<<");
+        // El mercado se carga y valida una sola vez para todo el lote
+        Mercado m = cargarMercado(rutaJson);
+        ValidadorMercado.validar(m);
+        System.out.println("Activos: " + m.activos.size() + " | Paralelismo: " + paralelismo);
+
+        // Muchos clientes comparten perfil: se reutilizan las soluciones ya probadas
+        CacheSoluciones cache = new CacheSoluciones(10_000);
+        ProcesadorLote.Resumen r = ProcesadorLote.procesar(m, entrada, salida, paralelismo,
+                optimizacion.OpcionesBusqueda.secuencial(), cache);
+        System.out.printf(java.util.Locale.US, "Clientes: %d (errores: %d) en %.2f s -> %.1f clientes/s%n",
+                r.clientes, r.errores, r.segundos, r.clientesPorSegundo());
+        System.out.println("Cache: " + cache.aciertos() + " aciertos, " + cache.fallos() + " fallos");
+        System.out.println("Resultados en " + salida);
+    }
+
+    // Snapshot binario (se mapea, ver tools.ExportarSnapshot) o JSON según el contenido del archivo
+    private static Mercado cargarMercado(String ruta) {
+        java.nio.file.Path p = java.nio.file.Path.of(ruta);
+        return SnapshotMercado.esSnapshot(p) ? SnapshotMercado.abrir(p) : CargadorDatosJson.cargarMercado(ruta);
+    }
+
     private static double leerDouble(Scanner sc, double defecto) {
         String s = sc.nextLine().trim();
         if (s.isEmpty()) return defecto;
         try { return Double.parseDouble(s); }
         catch (NumberFormatException e) { return defecto; }
     }
-
-    // === Mutación simple: reemplaza el activo con menor retorno por otro con mejor retorno ===
-    private static Asignacion mutarAsignacion(Asignacion original, Mercado mercado, Perfil perfil) {
-        Map<String, Double> nueva = new LinkedHashMap<>(original.montoPorTicker);
-
-        String peorTicker = null;
-        double peorRetorno = Double.MAX_VALUE;
-        for (String t : nueva.keySet()) {
-            Activo a = mercado.buscarPorTicker(t);
-            if (a != null && a.retorno < peorRetorno) {
-                peorRetorno = a.retorno;
-                peorTicker = t;
-            }
-        }
-
-        if (peorTicker == null) return original;
-
-        Activo mejorReemplazo = null;
-        for (Activo a : mercado.activos) {
-            if (nueva.containsKey(a.ticker)) continue;
-            if (a.retorno <= peorRetorno) continue;
-            if (a.sigma > perfil.riesgoMax) continue;
-
-            if (mejorReemplazo == null || a.retorno > mejorReemplazo.retorno)
-                mejorReemplazo = a;
-        }
-
-        if (mejorReemplazo != null) {
-            double montoAnterior = original.monto(peorTicker);
-            nueva.remove(peorTicker);
-            nueva.put(mejorReemplazo.ticker, montoAnterior);
-        }
-
-        return new Asignacion(nueva);
-    }
 }
@@ -0,0 +1,387 @@
+package heuristicas;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import model.*;
+import validacion.ValidadorAsignacion;
+
+/**
+ * Búsqueda local sobre carteras factibles: en cada paso aplica el movimiento que más sube el retorno.
+ *
+ * Movimientos (todos en lotes de montoMin, como el Branch & Bound):
+ *  - swap: sacar entero un activo j y poner en i el mayor monto que entre;
+ *  - shift-lot: sacar un lote de j y pasarlo (con lo libre) a i, esté o no en la cartera;
+ *  - add: poner lotes de i con el presupuesto libre; drop: sacar j entero si su retorno es negativo.
+ * Presupuesto, topes y cantidad se chequean en O(1) sobre el uso acumulado, y el riesgo con
+ * {@link RiesgoIncremental#riesgoCon}, también O(1). Un vecindario recorre cada origen de la cartera
+ * (o lo libre) contra cada activo, y por destino baja de a un lote desde el mayor monto que entra hasta
+ * que el riesgo entra o la ganancia ya no supera a la mejor: O(cartera · activos · lotes) evaluaciones
+ * en el peor caso, con lotes = tope / montoMin. Aplicar el movimiento elegido recalcula el riesgo en
+ * O(activos · cartera).
+ *
+ * {@link #construir} repite la búsqueda desde varias semillas (Greedy, SemillaFactible y perturbaciones
+ * al azar de la mejor) en varios hilos hasta agotar el plazo, y devuelve la mejor cartera válida.
+ */
+public final class BusquedaLocal {
+    private BusquedaLocal(){}
+
+    private static final int MIN_ACTIVOS = 3, MAX_ACTIVOS = 6;
+    private static final double EPS = 1e-9;
+
+    /** Ascenso desde inicio hasta un óptimo local; si el resultado no valida, devuelve inicio */
+    public static Asignacion mejorar(Mercado m, Perfil p, Asignacion inicio){
+        Datos d = new Datos(m, p);
+        Estado e = new Estado(d, inicio);
+        e.subir(Long.MAX_VALUE);
+        return elegir(m, p, e.asignacion(), inicio);
+    }
+
+    /**
+     * Lleva una cartera (por ejemplo, el óptimo de antes de un cambio de mercado) a una que cumple
+     * presupuesto, topes, cantidad y riesgo para m y p: redondea a lotes de montoMin, recorta lo que
+     * excede presupuesto o topes sacando lotes de menor retorno, saca el lote que más baja el riesgo
+     * mientras este supere el máximo y completa hasta 3 activos. null si no lo logra.
+     * El retorno mínimo no se fuerza (la búsqueda local y el B&B lo buscan después).
+     */
+    public static Asignacion reparar(Mercado m, Perfil p, Asignacion a){
+        Datos d = new Datos(m, p);
+        Asignacion.Soporte s = a.soporte(m);
+        // a lo sumo 6: quedan los de mayor aporte
+        Integer[] ord = new Integer[s.k];
+        for (int t = 0; t < s.k; t++) ord[t] = t;
+        Arrays.sort(ord, (x, y) -> Double.compare(s.montos[y] * d.retorno[s.indices[y]], s.montos[x] * d.retorno[s.indices[x]]));
+        LinkedHashMap<String,Double> mapa = new LinkedHashMap<>();
+        for (int t = 0; t < s.k && mapa.size() < MAX_ACTIVOS; t++) {
+            int i = s.indices[ord[t]];
+            double lotes = Math.floor((Math.min(s.montos[ord[t]], d.tope) + EPS) / d.montoMin[i]);
+            if (lotes >= 1) mapa.put(m.activos.get(i).ticker, lotes * d.montoMin[i]);
+        }
+        Estado e = new Estado(d, new Asignacion(mapa));
+
+        // presupuesto y topes de tipo/sector: lotes de menor retorno primero
+        while (e.libre < -EPS) if (!e.quitarPeor(-1, -1)) return null;
+        for (int t = 0; t < d.limTipo.length; t++)
+            while (e.usoTipo[t] - d.limTipo[t] > EPS) if (!e.quitarPeor(t, -1)) return null;
+        for (int c = 0; c < d.limSector.length; c++)
+            while (e.usoSector[c] - d.limSector[c] > EPS) if (!e.quitarPeor(-1, c)) return null;
+
+        // riesgo: el lote cuya salida más lo baja
+        while (e.riesgo.riesgo() > d.riesgoMax) {
+            int mejor = -1;
+            double dMejor = 0.0, rMejor = e.riesgo.riesgo();
+            for (int t = 0; t < e.k; t++) {
+                int i = e.cartera[t];
+                double di = e.lote(i);
+                double r = e.riesgo.riesgoCon(i, -di);
+                if (r < rMejor) { rMejor = r; mejor = i; dMejor = di; }
+            }
+            if (mejor < 0) return null;
+            e.mover(mejor, dMejor, -1, 0.0);
+        }
+
+        // completar hasta 3 con un lote del de mayor retorno que entre
+        while (e.k < MIN_ACTIVOS) {
+            int mejor = -1;
+            for (int i = 0; i < d.n; i++) {
+                if (e.monto[i] > 0.0 || e.lotes(i, -1, 0.0) < 1) continue;
+                if (mejor >= 0 && d.retorno[i] <= d.retorno[mejor]) continue;
+                if (e.riesgo.riesgoCon(i, d.montoMin[i]) <= d.riesgoMax) mejor = i;
+            }
+            if (mejor < 0) return null;
+            e.mover(-1, 0.0, mejor, d.montoMin[mejor]);
+        }
+        return e.asignacion();
+    }
+
+    /**
+     * Multi-arranque en hilos hasta que vence el plazo. Con plazo null (o cero) es una sola pasada
+     * de {@link #mejorar} sobre el Greedy.
+     */
+    public static Asignacion construir(Mercado m, Perfil p, int hilos, Duration plazo){
+        Asignacion greedy = GreedyInicial.construir(m, p);
+        Asignacion base = mejorar(m, p, greedy);
+        if (plazo == null || plazo.isZero() || plazo.isNegative()) return base;
+
+        Datos d = new Datos(m, p);
+        Asignacion semilla = SemillaFactible.construir(m, p);
+        long limite = System.nanoTime() + plazo.toNanos();
+        int h = Math.max(1, hilos);
+
+        List<Callable<Estado>> tareas = new ArrayList<>();
+        for (int t = 0; t < h; t++) {
+            // los hilos pares parten del Greedy ya mejorado, los impares de la semilla mínima
+            Asignacion desde = t % 2 == 0 ? base : semilla;
+            long s = 0x5DEECE66DL + t;
+            tareas.add(() -> iterar(d, desde, new Random(s), limite));
+        }
+
+        List<Estado> res = new ArrayList<>();
+        if (h == 1) {
+            try { res.add(tareas.get(0).call()); }
+            catch (Exception ex) { throw new IllegalStateException(ex); }
+        } else {
+            ExecutorService ex = Executors.newFixedThreadPool(h);
+            try {
+                for (Future<Estado> f : ex.invokeAll(tareas)) res.add(f.get());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ee) {
+                throw new IllegalStateException(ee.getCause());
+            } finally {
+                ex.shutdownNow();
+            }
+        }
+
+        Asignacion mejor = base;
+        double retMejor = CalculadoraRetorno.retornoCartera(m, base, p.presupuesto);
+        for (Estado e : res) {
+            if (e.ganancia() / d.presupuesto <= retMejor + 1e-12) continue;
+            Asignacion a = e.asignacion();
+            if (!valida(m, p, a)) continue;
+            mejor = a;
+            retMejor = CalculadoraRetorno.retornoCartera(m, a, p.presupuesto);
+        }
+        return mejor;
+    }
+
+    // búsqueda local iterada: perturbar la mejor del hilo y volver a subir, hasta el plazo
+    private static Estado iterar(Datos d, Asignacion desde, Random rnd, long limite){
+        Estado mejor = new Estado(d, desde);
+        mejor.subir(limite);
+        while (System.nanoTime() < limite) {
+            Estado e = mejor.copia();
+            int patadas = 1 + rnd.nextInt(2);
+            for (int t = 0; t < patadas; t++) e.patear(rnd);
+            e.subir(limite);
+            if (e.ganancia() > mejor.ganancia() + EPS) mejor = e;
+        }
+        return mejor;
+    }
+
+    private static Asignacion elegir(Mercado m, Perfil p, Asignacion nueva, Asignacion inicio){
+        // la búsqueda preserva todas las restricciones salvo, quizá, el retorno mínimo si inicio tampoco lo cumplía
+        return valida(m, p, nueva) || !valida(m, p, inicio) ? nueva : inicio;
+    }
+
+    private static boolean valida(Mercado m, Perfil p, Asignacion a){
+        try {
+            ValidadorAsignacion.validar(m, p, a);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    // ---------- datos compilados del problema (solo lectura, compartidos entre hilos) ----------
+
+    private static final class Datos {
+        final Mercado m;
+        final int n;
+        final double presupuesto, tope, riesgoMax;
+        final double[] retorno, montoMin;
+        final int[] tipo, sector;
+        final double[] limTipo, limSector;
+
+        Datos(Mercado m, Perfil p){
+            this.m = m;
+            this.n = m.activos.size();
+            this.presupuesto = p.presupuesto;
+            this.tope = p.maxPorActivo * p.presupuesto;
+            this.riesgoMax = p.riesgoMax;
+            this.retorno = new double[n];
+            this.montoMin = new double[n];
+            this.tipo = new int[n];
+            this.sector = new int[n];
+            Map<String,Integer> tipos = new HashMap<>(), sectores = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                Activo a = m.activos.get(i);
+                retorno[i] = a.retorno;
+                montoMin[i] = a.montoMin;
+                tipo[i] = tipos.computeIfAbsent(a.tipo, x -> tipos.size());
+                sector[i] = sectores.computeIfAbsent(a.sector, x -> sectores.size());
+            }
+            this.limTipo = new double[tipos.size()];
+            this.limSector = new double[sectores.size()];
+            for (Map.Entry<String,Integer> t : tipos.entrySet())
+                limTipo[t.getValue()] = p.maxPorTipo.getOrDefault(t.getKey(), 1.0) * p.presupuesto;
+            for (Map.Entry<String,Integer> s : sectores.entrySet())
+                limSector[s.getValue()] = p.maxPorSector.getOrDefault(s.getKey(), 1.0) * p.presupuesto;
+        }
+    }
+
+    // ---------- estado de una cartera en búsqueda ----------
+
+    private static final class Estado {
+        final Datos d;
+        final double[] monto;
+        final int[] cartera = new int[MAX_ACTIVOS];
+        int k;
+        final double[] usoTipo, usoSector;
+        double libre;
+        RiesgoIncremental riesgo;
+
+        Estado(Datos d, Asignacion a){
+            this.d = d;
+            this.monto = new double[d.n];
+            this.usoTipo = new double[d.limTipo.length];
+            this.usoSector = new double[d.limSector.length];
+            this.libre = d.presupuesto;
+            Asignacion.Soporte s = a.soporte(d.m);
+            if (s.k > MAX_ACTIVOS) throw new IllegalArgumentException("La cartera inicial tiene más de " + MAX_ACTIVOS + " activos");
+            for (int t = 0; t < s.k; t++) sumar(s.indices[t], s.montos[t]);
+            recalcularRiesgo();
+        }
+
+        private Estado(Estado o){
+            this.d = o.d;
+            this.monto = o.monto.clone();
+            System.arraycopy(o.cartera, 0, cartera, 0, MAX_ACTIVOS);
+            this.k = o.k;
+            this.usoTipo = o.usoTipo.clone();
+            this.usoSector = o.usoSector.clone();
+            this.libre = o.libre;
+            this.riesgo = o.riesgo.copia();
+        }
+
+        Estado copia(){ return new Estado(this); }
+
+        /** Retorno de la cartera en moneda (sum monto · retorno) */
+        double ganancia(){
+            double g = 0.0;
+            for (int t = 0; t < k; t++) g += monto[cartera[t]] * d.retorno[cartera[t]];
+            return g;
+        }
+
+        Asignacion asignacion(){
+            LinkedHashMap<String,Double> mapa = new LinkedHashMap<>();
+            for (int t = 0; t < k; t++) mapa.put(d.m.activos.get(cartera[t]).ticker, monto[cartera[t]]);
+            return new Asignacion(mapa);
+        }
+
+        // actualiza monto, cartera y usos; el riesgo se recalcula aparte
+        private void sumar(int i, double delta){
+            boolean estaba = monto[i] > 0.0;
+            monto[i] += delta;
+            if (monto[i] < EPS) monto[i] = 0.0;
+            usoTipo[d.tipo[i]] += delta;
+            usoSector[d.sector[i]] += delta;
+            libre -= delta;
+            if (!estaba && monto[i] > 0.0) cartera[k++] = i;
+            else if (estaba && monto[i] == 0.0) {
+                for (int t = 0; t < k; t++) if (cartera[t] == i) { cartera[t] = cartera[--k]; break; }
+            }
+        }
+
+        // desde cero tras cada movimiento: O(n·k), evita arrastrar redondeo de muchos aplicar/deshacer
+        private void recalcularRiesgo(){
+            riesgo = new RiesgoIncremental(d.m, d.presupuesto);
+            for (int t = 0; t < k; t++) riesgo.aplicar(cartera[t], monto[cartera[t]]);
+        }
+
+        private void mover(int j, double dj, int i, double di){
+            if (j >= 0) sumar(j, -dj);
+            if (i >= 0) sumar(i, di);
+            recalcularRiesgo();
+        }
+
+        // lo que se saca de i de una vez: un lote, o todo si no quedaría ni el mínimo
+        private double lote(int i){
+            return monto[i] - d.montoMin[i] >= d.montoMin[i] - EPS ? d.montoMin[i] : monto[i];
+        }
+
+        /** Saca un lote del activo de menor retorno (del tipo o sector dado, -1 = cualquiera); false si no hay */
+        private boolean quitarPeor(int tipo, int sector){
+            int peor = -1;
+            for (int t = 0; t < k; t++) {
+                int i = cartera[t];
+                if ((tipo >= 0 && d.tipo[i] != tipo) || (sector >= 0 && d.sector[i] != sector)) continue;
+                if (peor < 0 || d.retorno[i] < d.retorno[peor]) peor = i;
+            }
+            if (peor < 0) return false;
+            mover(peor, lote(peor), -1, 0.0);
+            return true;
+        }
+
+        /** Lotes de i que entran si se liberan dj de j (j = -1: solo lo libre) */
+        private int lotes(int i, int j, double dj){
+            double cabe = Math.min(libre + dj, d.tope - monto[i]);
+            double t = d.limTipo[d.tipo[i]] - usoTipo[d.tipo[i]] + (j >= 0 && d.tipo[j] == d.tipo[i] ? dj : 0.0);
+            double s = d.limSector[d.sector[i]] - usoSector[d.sector[i]] + (j >= 0 && d.sector[j] == d.sector[i] ? dj : 0.0);
+            cabe = Math.min(cabe, Math.min(t, s));
+            return cabe + EPS < d.montoMin[i] ? 0 : (int) Math.floor((cabe + EPS) / d.montoMin[i]);
+        }
+
+        private double riesgoCon(int j, double dj, int i, double di){
+            return j < 0 ? riesgo.riesgoCon(i, di) : riesgo.riesgoCon(j, -dj, i, di);
+        }
+
+        /** Aplica el mejor movimiento que sube el retorno; false si la cartera es un óptimo local */
+        boolean paso(){
+            double mejor = 1e-12 * d.presupuesto;
+            int bj = -1, bi = -1;
+            double bdj = 0.0, bdi = 0.0;
+
+            for (int s = -1; s < k; s++) {
+                int j = s < 0 ? -1 : cartera[s];
+                // de j se saca todo (swap) o un lote (shift-lot); j = -1 es agregar con lo libre
+                int opciones = j < 0 ? 1 : (monto[j] - d.montoMin[j] >= d.montoMin[j] - EPS ? 2 : 1);
+                for (int o = 0; o < opciones; o++) {
+                    double dj = j < 0 ? 0.0 : (o == 0 ? monto[j] : d.montoMin[j]);
+                    boolean sale = j >= 0 && o == 0;
+                    int kResto = sale ? k - 1 : k;
+                    double costo = j < 0 ? 0.0 : dj * d.retorno[j];
+
+                    // drop puro: solo mejora si j rinde negativo
+                    if (sale && kResto >= MIN_ACTIVOS && -costo > mejor
+                            && riesgo.riesgoCon(j, -dj) <= d.riesgoMax) {
+                        mejor = -costo; bj = j; bdj = dj; bi = -1; bdi = 0.0;
+                    }
+
+                    for (int i = 0; i < d.n; i++) {
+                        if (i == j || d.retorno[i] <= 0.0) continue;
+                        int kNuevo = kResto + (monto[i] > 0.0 ? 0 : 1);
+                        if (kNuevo > MAX_ACTIVOS || kNuevo < MIN_ACTIVOS) continue;
+                        int q = lotes(i, j, dj);
+                        // con el mayor monto posible ya no supera al mejor: ni se mira el riesgo
+                        for (; q >= 1; q--) {
+                            double di = q * d.montoMin[i];
+                            double g = di * d.retorno[i] - costo;
+                            if (g <= mejor) break;
+                            if (riesgoCon(j, dj, i, di) <= d.riesgoMax) {
+                                mejor = g; bj = j; bdj = dj; bi = i; bdi = di;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            if (bj < 0 && bi < 0) return false;
+            mover(bj, bdj, bi, bdi);
+            return true;
+        }
+
+        /** Sube hasta un óptimo local o hasta el instante limite (System.nanoTime) */
+        void subir(long limite){
+            while (paso()) {
+                if (System.nanoTime() >= limite) return;
+            }
+        }
+
+        /** Perturbación al azar que conserva la factibilidad: cambia un activo de la cartera por otro */
+        void patear(Random rnd){
+            for (int intento = 0; intento < 50; intento++) {
+                int j = cartera[rnd.nextInt(k)];
+                int i = rnd.nextInt(d.n);
+                if (monto[i] > 0.0) continue;
+                double dj = monto[j];
+                int q = lotes(i, j, dj);
+                if (q < 1) continue;
+                double di = (1 + rnd.nextInt(q)) * d.montoMin[i];
+                if (riesgoCon(j, dj, i, di) > d.riesgoMax) continue;
+                mover(j, dj, i, di);
+                return;
+            }
+        }
+    }
+}
@@ -17,15 +17,14 @@ public final class GreedyInicial {
         LinkedHashMap<String,Double> asig = new LinkedHashMap<>(base.getMontos());
         Map<String,Double> usoTipo   = new HashMap<>();
         Map<String,Double> usoSector = new HashMap<>();
+        RiesgoIncremental riesgo = new RiesgoIncremental(m, base, p.presupuesto);
         int distintos = 0;
-        for (Map.Entry<String,Double> e : asig.entrySet()) {
-            if (e.getValue() > 0) {
-                distintos++;
-                int idx = m.indexOf(e.getKey());
-                Activo a = m.activos.get(idx);
-                usoTipo.put(a.tipo, usoTipo.getOrDefault(a.tipo,0.0) + e.getValue());
-                usoSector.put(a.sector, usoSector.getOrDefault(a.sector,0.0) + e.getValue());
-            }
+        Asignacion.Soporte sop = base.soporte(m);
+        for (int t = 0; t < sop.k; t++) {
+            distintos++;
+            Activo a = m.activos.get(sop.indices[t]);
+            usoTipo.put(a.tipo, usoTipo.getOrDefault(a.tipo,0.0) + sop.montos[t]);
+            usoSector.put(a.sector, usoSector.getOrDefault(a.sector,0.0) + sop.montos[t]);
         }
 
         double invertido = 0.0;
@@ -49,7 +48,8 @@ public final class GreedyInicial {
             progreso = false;
 
             for (int k=0; k<ord.size(); k++){
-                Activo a = m.activos.get(ord.get(k));
+                int idx = ord.get(k);
+                Activo a = m.activos.get(idx);
                 boolean yaEsta = asig.containsKey(a.ticker) && asig.get(a.ticker) > 0.0;
 
                 
@@ -70,20 +70,14 @@ public final class GreedyInicial {
                 double limSector   = p.maxPorSector.getOrDefault(a.sector,1.0)*p.presupuesto;
                 if (nuevoTipo - limTipo > 1e-9 || nuevoSector - limSector > 1e-9) continue;
 
-                // aplicar y verificar riesgo
+                // verificar riesgo antes de aplicar (O(1) sobre el estado incremental)
+                double sigma = riesgo.riesgoCon(idx, delta);
+                if (sigma - p.riesgoMax > 1e-9) continue;
+
                 asig.put(a.ticker, actual + delta);
                 usoTipo.put(a.tipo, nuevoTipo);
                 usoSector.put(a.sector, nuevoSector);
-
-                Asignacion parcial = new Asignacion(asig);
-                double sigma = CalculadoraRiesgo.riesgoCartera(m, parcial, p.presupuesto);
-                if (sigma - p.riesgoMax > 1e-9) {
-                    
-                    asig.put(a.ticker, actual);
-                    usoTipo.put(a.tipo, nuevoTipo - delta);
-                    usoSector.put(a.sector, nuevoSector - delta);
-                    continue;
-                }
+                riesgo.aplicar(idx, delta);
 
                 
                 presupuestoRest -= delta;
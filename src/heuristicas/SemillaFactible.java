@@ -27,6 +27,7 @@ public final class SemillaFactible {
         LinkedHashMap<String,Double> asig = new LinkedHashMap<>();
         Map<String,Double> usoTipo   = new HashMap<>();
         Map<String,Double> usoSector = new HashMap<>();
+        RiesgoIncremental riesgo = new RiesgoIncremental(m, p.presupuesto);
 
         double presupuestoRest = p.presupuesto;
         int distintos = 0;
@@ -34,7 +35,8 @@ public final class SemillaFactible {
 
        
         for (int k=0; k<ord.size() && distintos < 6; k++){
-            Activo a = m.activos.get(ord.get(k));
+            int idx = ord.get(k);
+            Activo a = m.activos.get(idx);
             double unit = a.montoMin;
 
             if (unit > presupuestoRest + 1e-9) continue;
@@ -50,6 +52,7 @@ public final class SemillaFactible {
             asig.put(a.ticker, unit);
             usoTipo.put(a.tipo, nuevoTipo);
             usoSector.put(a.sector, nuevoSector);
+            riesgo.aplicar(idx, unit);
             presupuestoRest -= unit;
             distintos++;
         }
@@ -60,8 +63,7 @@ public final class SemillaFactible {
         }
 
         // validar riesgo (si se pasa, intentá quitar el último agregado hasta quedar factible)
-        Asignacion seed = new Asignacion(asig);
-        double sigma = CalculadoraRiesgo.riesgoCartera(m, seed, p.presupuesto);
+        double sigma = riesgo.riesgo();
         while (sigma - p.riesgoMax > 1e-9 && distintos > 3) {
             // quitar el último
             String lastTicker = null;
@@ -73,9 +75,9 @@ public final class SemillaFactible {
             presupuestoRest += unit;
             usoTipo.put(a.tipo, usoTipo.get(a.tipo) - unit);
             usoSector.put(a.sector, usoSector.get(a.sector) - unit);
+            riesgo.deshacer(idx, unit);
             distintos--;
-            seed = new Asignacion(asig);
-            sigma = CalculadoraRiesgo.riesgoCartera(m, seed, p.presupuesto);
+            sigma = riesgo.riesgo();
         }
 
         // revalida si aún excede riesgo, no hay semilla factible
@@ -83,6 +85,6 @@ public final class SemillaFactible {
             throw new IllegalArgumentException("No se pudo construir semilla factible dentro del riesgo máximo.");
         }
 
-        return seed;
+        return new Asignacion(asig);
     }
 }
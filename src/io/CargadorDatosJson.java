@@ -1,55 +1,141 @@
 package io;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 import io.dto.*;
 import model.*;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
 import java.util.*;
 
+/**
+ * Carga mercado.json en streaming con JsonReader: los activos se leen uno por uno y cada fila
+ * de correlaciones va directo a la matriz primitiva, validando diagonal, rango y simetría al vuelo.
+ * No se arma el String del archivo ni listas de Double, así el pico de memoria queda cerca del
+ * tamaño final de la matriz.
+ */
 public final class CargadorDatosJson {
     private CargadorDatosJson(){}
 
+    /** Disposición de la matriz cuando no se pide otra: triángulo superior, la mitad de memoria que n x n */
+    public static final MatrizCorrelacion.Disposicion DISPOSICION = MatrizCorrelacion.Disposicion.TRIANGULAR;
+
     public static Mercado cargarMercado(String rutaJson){
-        try {
-            String json = Files.readString(Path.of(rutaJson));
-            MercadoJson mj = new Gson().fromJson(json, MercadoJson.class);
-
-            if (mj.activos == null || mj.activos.isEmpty())
-                throw new IllegalArgumentException("'activos' vacío");
-            if (mj.correlaciones == null || mj.correlaciones.isEmpty())
-                throw new IllegalArgumentException("'correlaciones' vacía");
-
-            int n = mj.activos.size();
-            if (mj.correlaciones.size() != n) throw new IllegalArgumentException("ρ no es n x n");
-            for (var fila : mj.correlaciones) if (fila.size() != n) throw new IllegalArgumentException("ρ no es n x n");
-
-            var lista = new ArrayList<Activo>(n);
-            var tickers = new HashSet<String>();
-            for (var a : mj.activos){
-                if (a.ticker == null || a.ticker.isBlank()) throw new IllegalArgumentException("ticker vacío");
-                if (!tickers.add(a.ticker)) throw new IllegalArgumentException("ticker duplicado: "+a.ticker);
-                lista.add(new Activo(a.ticker, a.tipo, a.sector, a.retorno, a.sigma, a.montoMin));
-            }
+        return cargarMercado(rutaJson, DISPOSICION);
+    }
 
-            double[][] rho = new double[n][n];
-            for (int i=0;i<n;i++) for (int j=0;j<n;j++) rho[i][j] = mj.correlaciones.get(i).get(j);
+    public static Mercado cargarMercado(String rutaJson, MatrizCorrelacion.Disposicion disposicion){
+        Gson gson = new Gson();
+        try (JsonReader r = new JsonReader(Files.newBufferedReader(Path.of(rutaJson)))) {
+            List<Activo> lista = null;
+            MatrizCorrelacion rho = null;
 
-            // chequeos básicos
-            for (int i=0;i<n;i++){
-                if (Math.abs(rho[i][i]-1.0) > 1e-9) throw new IllegalArgumentException("ρ[i][i]!=1 en i="+i);
-                for (int j=i+1;j<n;j++){
-                    if (Math.abs(rho[i][j]-rho[j][i]) > 1e-9) throw new IllegalArgumentException("ρ no simétrica ("+i+","+j+")");
-                    if (rho[i][j] < -1.0 || rho[i][j] > 1.0) throw new IllegalArgumentException("ρ fuera de [-1,1] ("+i+","+j+")");
+            r.beginObject();
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "activos":
+                        lista = leerActivos(r, gson);
+                        break;
+                    case "correlaciones":
+                        // si vienen antes que los activos, n sale del largo de la primera fila
+                        rho = leerCorrelaciones(r, lista == null ? -1 : lista.size(), disposicion);
+                        break;
+                    default:
+                        r.skipValue();
                 }
             }
+            r.endObject();
 
+            if (lista == null || lista.isEmpty()) throw new IllegalArgumentException("'activos' vacío");
+            if (rho == null) throw new IllegalArgumentException("'correlaciones' vacía");
+            if (rho.n() != lista.size()) throw new IllegalArgumentException("ρ no es n x n");
             return new Mercado(lista, rho);
+        } catch (UncheckedIOException e){
+            throw invalido(rutaJson, e.getCause());
         } catch (IOException e){
-            throw new RuntimeException("No pude leer " + rutaJson, e);
-        } catch (JsonSyntaxException e){
+            throw invalido(rutaJson, e);
+        } catch (JsonParseException | IllegalStateException | NumberFormatException e){
             throw new RuntimeException("JSON inválido: " + e.getMessage(), e);
         }
     }
+
+    private static List<Activo> leerActivos(JsonReader r, Gson gson) throws IOException {
+        var lista = new ArrayList<Activo>();
+        var tickers = new HashSet<String>();
+        r.beginArray();
+        while (r.hasNext()) {
+            ActivoJson a = gson.fromJson(r, ActivoJson.class);
+            if (a == null || a.ticker == null || a.ticker.isBlank()) throw new IllegalArgumentException("ticker vacío");
+            if (!tickers.add(a.ticker)) throw new IllegalArgumentException("ticker duplicado: "+a.ticker);
+            lista.add(new Activo(a.ticker, a.tipo, a.sector, a.retorno, a.sigma, a.montoMin));
+        }
+        r.endArray();
+        return lista;
+    }
+
+    private static MatrizCorrelacion leerCorrelaciones(JsonReader r, int n, MatrizCorrelacion.Disposicion d) throws IOException {
+        r.beginArray();
+        if (!r.hasNext()) throw new IllegalArgumentException("'correlaciones' vacía");
+
+        double[] primera = null;
+        if (n < 0) {
+            primera = leerFilaSinLargo(r);
+            n = primera.length;
+        }
+        final int tam = n;
+        final double[] fila0 = primera;
+
+        MatrizCorrelacion rho = MatrizCorrelacion.desdeFilas(tam, d, (i, fila) -> {
+            if (i == 0 && fila0 != null) System.arraycopy(fila0, 0, fila, 0, tam);
+            else leerFila(r, i, fila);
+            if (Math.abs(fila[i]-1.0) > 1e-9) throw new IllegalArgumentException("ρ[i][i]!=1 en i="+i);
+            for (int j=0;j<tam;j++){
+                if (fila[j] < -1.0 || fila[j] > 1.0) throw new IllegalArgumentException("ρ fuera de [-1,1] ("+i+","+j+")");
+            }
+        });
+
+        if (r.hasNext()) throw new IllegalArgumentException("ρ no es n x n");
+        r.endArray();
+        return rho;
+    }
+
+    // FuenteFilas no declara IOException: se envuelve y se desenvuelve en cargarMercado
+    private static void leerFila(JsonReader r, int i, double[] fila){
+        try {
+            if (!r.hasNext()) throw new IllegalArgumentException("ρ no es n x n");
+            r.beginArray();
+            int j = 0;
+            while (r.hasNext()) {
+                if (j == fila.length) throw new IllegalArgumentException("ρ no es n x n (fila "+i+")");
+                fila[j++] = r.nextDouble();
+            }
+            r.endArray();
+            if (j != fila.length) throw new IllegalArgumentException("ρ no es n x n (fila "+i+")");
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double[] leerFilaSinLargo(JsonReader r) throws IOException {
+        double[] f = new double[64];
+        int j = 0;
+        r.beginArray();
+        while (r.hasNext()) {
+            if (j == f.length) f = Arrays.copyOf(f, 2 * j);
+            f[j++] = r.nextDouble();
+        }
+        r.endArray();
+        if (j == 0) throw new IllegalArgumentException("ρ no es n x n");
+        return Arrays.copyOf(f, j);
+    }
+
+    private static RuntimeException invalido(String ruta, IOException e){
+        // EOF a mitad del documento es un archivo truncado, no un error de lectura
+        if (e instanceof MalformedJsonException || e instanceof EOFException) return new RuntimeException("JSON inválido: " + e.getMessage(), e);
+        return new RuntimeException("No pude leer " + ruta, e);
+    }
 }
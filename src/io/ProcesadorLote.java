@@ -0,0 +1,148 @@
+package io;
+
+import com.google.gson.*;
+import io.dto.*;
+import model.*;
+import optimizacion.BBPortafolio;
+import optimizacion.CacheSoluciones;
+import optimizacion.OpcionesBusqueda;
+import validacion.ValidadorPerfil;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optimiza en lote muchos clientes contra un mismo Mercado ya cargado y validado.
+ * Lee un perfil por línea (JSONL), resuelve en paralelo con un máximo de clientes en vuelo
+ * y escribe cada resultado en cuanto termina (el orden de salida no es el de entrada).
+ */
+public final class ProcesadorLote {
+    private ProcesadorLote(){}
+
+    // Límites generales por defecto (los mismos que usa App)
+    private static final double MAX_POR_ACTIVO = 0.15;
+    private static final Map<String, Double> MAX_POR_TIPO = Map.of("Accion", 0.70, "Bono", 0.60, "ETF", 0.50);
+    private static final Map<String, Double> MAX_POR_SECTOR = Map.of("Tecnologia", 0.60, "Energia", 0.50, "Salud", 0.50, "Consumo", 0.50);
+
+    public static final class Resumen {
+        public final int clientes;
+        public final int errores;
+        public final double segundos;
+        public Resumen(int clientes, int errores, double segundos){
+            this.clientes=clientes; this.errores=errores; this.segundos=segundos;
+        }
+        public double clientesPorSegundo(){
+            return segundos > 0 ? clientes / segundos : 0.0;
+        }
+    }
+
+    public static Resumen procesar(Mercado m, String rutaEntrada, String rutaSalida,
+                                   int paralelismo, OpcionesBusqueda op){
+        return procesar(m, rutaEntrada, rutaSalida, paralelismo, op, null);
+    }
+
+    /** Igual que {@link #procesar(Mercado, String, String, int, OpcionesBusqueda)}, resolviendo a través del cache (puede ser null) */
+    public static Resumen procesar(Mercado m, String rutaEntrada, String rutaSalida,
+                                   int paralelismo, OpcionesBusqueda op, CacheSoluciones cache){
+        Gson gson = new Gson();
+        Semaphore cupos = new Semaphore(paralelismo);
+        AtomicInteger clientes = new AtomicInteger(), errores = new AtomicInteger();
+        List<IOException> fallasEscritura = Collections.synchronizedList(new ArrayList<>());
+        long t0 = System.nanoTime();
+
+        ExecutorService ex = ejecutor(paralelismo);
+        try (BufferedReader in = Files.newBufferedReader(Path.of(rutaEntrada));
+             BufferedWriter out = Files.newBufferedWriter(Path.of(rutaSalida))) {
+            String linea;
+            int nro = 0;
+            try {
+                while ((linea = in.readLine()) != null) {
+                    nro++;
+                    if (linea.isBlank()) continue;
+                    final String l = linea;
+                    final int n = nro;
+                    cupos.acquire();  // back-pressure: no se lee más de lo que se puede resolver
+                    ex.execute(() -> {
+                        try {
+                            ResultadoClienteJson r = resolver(m, gson, l, n, op, cache);
+                            clientes.incrementAndGet();
+                            if (r.error != null) errores.incrementAndGet();
+                            String json = gson.toJson(r);
+                            synchronized (out) {
+                                out.write(json);
+                                out.newLine();
+                            }
+                        } catch (IOException e) {
+                            fallasEscritura.add(e);
+                        } finally {
+                            cupos.release();
+                        }
+                    });
+                }
+                ex.shutdown();
+                ex.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Lote interrumpido", e);
+            }
+            if (!fallasEscritura.isEmpty()) throw fallasEscritura.get(0);
+        } catch (IOException e){
+            throw new RuntimeException("No pude procesar el lote " + rutaEntrada + " -> " + rutaSalida, e);
+        } finally {
+            ex.shutdownNow();
+        }
+
+        return new Resumen(clientes.get(), errores.get(), (System.nanoTime() - t0) / 1e9);
+    }
+
+    private static ResultadoClienteJson resolver(Mercado m, Gson gson, String linea, int nro,
+                                                 OpcionesBusqueda op, CacheSoluciones cache){
+        long t0 = System.nanoTime();
+        ResultadoClienteJson r = new ResultadoClienteJson();
+        r.linea = nro;
+        try {
+            ClienteJson cj = gson.fromJson(linea, ClienteJson.class);
+            if (cj == null || cj.tipoPerfil == null) throw new IllegalArgumentException("falta 'tipoPerfil'");
+            r.nombre = cj.nombre;
+
+            Perfil perfil = new Perfil(
+                cj.presupuesto,
+                cj.maxPorActivo == null ? MAX_POR_ACTIVO : cj.maxPorActivo,
+                cj.maxPorTipo == null ? MAX_POR_TIPO : cj.maxPorTipo,
+                cj.maxPorSector == null ? MAX_POR_SECTOR : cj.maxPorSector,
+                cj.tipoPerfil,
+                cj.retornoDeseado
+            );
+            ValidadorPerfil.validar(perfil);
+
+            BBPortafolio.Resultado res = cache != null
+                ? cache.maximizarRetorno(m, perfil, op)
+                : BBPortafolio.maximizarRetorno(m, perfil, op);
+            r.retorno = res.retorno;
+            r.riesgo = res.riesgo;
+            r.gap = res.gap;
+            r.optimoProbado = res.optimoProbado;
+            r.nodos = res.nodosVisitados;
+            r.montos = res.mejor.getMontos();
+        } catch (JsonParseException | IllegalArgumentException e) {
+            r.error = e.getMessage();
+        } catch (RuntimeException e) {
+            // cualquier otra falla del cliente (p. ej. un null en maxPorTipo) también va a su línea, no al hilo
+            r.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        r.ms = (System.nanoTime() - t0) / 1e6;
+        return r;
+    }
+
+    // Hilos virtuales si la JVM los tiene (21+); si no, un pool fijo del mismo tamaño que el paralelismo
+    private static ExecutorService ejecutor(int paralelismo){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(paralelismo);
+        }
+    }
+}
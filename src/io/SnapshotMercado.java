@@ -0,0 +1,349 @@
+package io;
+
+import model.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Formato binario versionado de un Mercado, pensado para abrirse mapeando el archivo en memoria.
+ * La matriz queda en el page cache del sistema operativo: no se copia al heap y varias JVM
+ * que abren el mismo archivo comparten las mismas páginas.
+ *
+ * Disposición (little-endian):
+ * <pre>
+ *   cabecera      magia "TPOMERC1" (8) | versión int | flags int (bit 0: matriz en float)
+ *                 n int | cantTipos int | cantSectores int | reservado int
+ *                 offsetActivos long | offsetMatriz long | huella long
+ *   diccionario   cantTipos + cantSectores strings (int largo + UTF-8)
+ *   activos       n x (tipo int | sector int | retorno double | sigma double | montoMin double | ticker string)
+ *   matriz        alineada a 8 bytes: triángulo superior por filas, n(n+1)/2 valores double o float
+ * </pre>
+ * Al abrir se verifican cabecera, tamaños y categorías, no los valores de la matriz:
+ * esos se validan al escribir (ver {@link Escritor}). La huella de la cabecera es la del Mercado de
+ * origen: abrir(ruta, huella) rechaza un snapshot escrito desde otra versión del mercado.
+ */
+public final class SnapshotMercado {
+    private SnapshotMercado(){}
+
+    public static final int VERSION = 1;
+    private static final byte[] MAGIA = "TPOMERC1".getBytes(StandardCharsets.US_ASCII);
+    private static final int FLAG_FLOAT = 1;
+    private static final int CABECERA = 8 + 4 * 6 + 8 * 3;
+    private static final int BLOQUE = 1 << 16;
+    private static final int POSICION_HUELLA = CABECERA - 8;
+
+    /** ¿El archivo empieza con la magia del formato? */
+    public static boolean esSnapshot(Path ruta){
+        try (FileChannel ch = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(MAGIA.length);
+            while (b.hasRemaining() && ch.read(b) > 0) { }
+            return !b.hasRemaining() && Arrays.equals(b.array(), MAGIA);
+        } catch (IOException e){
+            return false;
+        }
+    }
+
+    // ---------- Escritura ----------
+
+    /** Escribe el mercado; con simple=true la matriz se guarda en float (la mitad de tamaño) */
+    public static void escribir(Mercado m, Path salida, boolean simple){
+        int n = m.activos.size();
+        double[] fila = new double[n];
+        try (Escritor w = new Escritor(m.activos, salida, simple)) {
+            for (int i = 0; i < n; i++) {
+                m.correlaciones.fila(i, fila);
+                w.fila(i, fila);
+            }
+        } catch (IOException e){
+            throw new RuntimeException("No pude escribir " + salida, e);
+        }
+    }
+
+    /**
+     * Escritura en streaming: cabecera y activos al abrir, después las n filas en orden.
+     * Cada fila se compara contra lo ya escrito (diagonal, rango y simetría): las columnas de un bloque
+     * de filas se releen del archivo una vez por bloque, así el heap guarda a lo sumo una franja de
+     * VALORES_FRANJA valores. La huella de la cabecera es la del Mercado de origen (Mercado.huella),
+     * calculada sobre las filas recibidas.
+     * Se escribe con el FileChannel, sin mapear, a un temporal en el mismo directorio que recién al
+     * cerrar con las n filas pasa a ser la salida (move atómico; sin un mapeo vivo el move también anda
+     * en Windows). Si falta alguna fila o una se rechazó, el temporal se borra y la salida queda como
+     * estaba, así abrir nunca ve un snapshot a medio escribir.
+     */
+    public static final class Escritor implements Closeable {
+        private static final double TOL_SIMETRIA = 1e-9, TOL_SIMETRIA_FLOAT = 1e-6;
+        private static final int VALORES_FRANJA = 1 << 20;  // 8 MB
+
+        private final Path salida, temporal;
+        private final FileChannel ch;
+        private final long offsetMatriz;
+        private final int n, ancho, alto;
+        private final boolean simple;
+        private final ByteBuffer pendiente = nuevo(BLOQUE);
+        // franja[j·alto + (c - desde)]: valor guardado en (j, c) para las columnas del bloque [desde, desde + alto)
+        private final double[] franja;
+        private int siguiente, desde;
+        private long huella;
+
+        public Escritor(List<Activo> activos, Path salida, boolean simple) throws IOException {
+            this.n = activos.size();
+            this.simple = simple;
+            if (n == 0) throw new IllegalArgumentException("No hay activos");
+            this.ancho = simple ? Float.BYTES : Double.BYTES;
+            this.alto = Math.max(1, Math.min(n, VALORES_FRANJA / n));
+            this.franja = new double[n * alto];
+            this.huella = Mercado.huellaActivos(activos);
+
+            List<String> tipos = new ArrayList<>(), sectores = new ArrayList<>();
+            Map<String,Integer> idTipo = new HashMap<>(), idSector = new HashMap<>();
+            for (Activo a : activos) {
+                if (idTipo.putIfAbsent(a.tipo, tipos.size()) == null) tipos.add(a.tipo);
+                if (idSector.putIfAbsent(a.sector, sectores.size()) == null) sectores.add(a.sector);
+            }
+
+            // diccionario y activos primero a memoria (son chicos), para conocer los offsets
+            ByteBuffer dic = nuevo(BLOQUE);
+            for (String t : tipos) dic = poner(dic, t);
+            for (String s : sectores) dic = poner(dic, s);
+            ByteBuffer act = nuevo(BLOQUE);
+            for (Activo a : activos) {
+                act = asegurar(act, 4 + 4 + 8 * 3);
+                act.putInt(idTipo.get(a.tipo)).putInt(idSector.get(a.sector))
+                   .putDouble(a.retorno).putDouble(a.sigma).putDouble(a.montoMin);
+                act = poner(act, a.ticker);
+            }
+            dic.flip();
+            act.flip();
+
+            long offsetActivos = CABECERA + dic.remaining();
+            this.offsetMatriz = alinear(offsetActivos + act.remaining());
+            long bytesMatriz = (long) n * (n + 1) / 2 * ancho;
+            if (bytesMatriz > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Matriz demasiado grande para un solo mapeo (" + n + " activos)");
+
+            // la huella se completa al cerrar
+            ByteBuffer cab = nuevo(CABECERA);
+            cab.put(MAGIA).putInt(VERSION).putInt(simple ? FLAG_FLOAT : 0)
+               .putInt(n).putInt(tipos.size()).putInt(sectores.size()).putInt(0)
+               .putLong(offsetActivos).putLong(offsetMatriz).putLong(0L);
+            cab.flip();
+
+            Path dir = salida.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            this.salida = salida;
+            // CREATE_NEW con nombre propio (no createTempFile) para que el snapshot tenga los permisos de siempre
+            this.temporal = dir.resolve(salida.getFileName() + "." + ProcessHandle.current().pid()
+                                        + "." + System.nanoTime() + ".tmp");
+            ch = FileChannel.open(temporal, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE);
+            try {
+                escribirTodo(ch, cab);
+                escribirTodo(ch, dic);
+                escribirTodo(ch, act);
+                escribirTodo(ch, nuevo((int) (offsetMatriz - ch.position())));  // relleno
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                Files.deleteIfExists(temporal);
+                throw e;
+            }
+        }
+
+        /** Fila i completa (se guardan las columnas j >= i); las filas van en orden 0..n-1 */
+        public void fila(int i, double[] fila) throws IOException {
+            if (i != siguiente) throw new IllegalArgumentException("Fila fuera de orden: " + i + " (se espera " + siguiente + ")");
+            if (Math.abs(fila[i] - 1.0) > 1e-6) throw new IllegalArgumentException("rho[" + i + "][" + i + "] != 1");
+            if (i == desde + alto || i == 0) cargarFranja(i);
+            double tol = simple ? TOL_SIMETRIA_FLOAT : TOL_SIMETRIA;
+            for (int j = 0; j < i; j++) {
+                if (Math.abs(fila[j] - franja[j * alto + (i - desde)]) > tol)
+                    throw new IllegalArgumentException("rho no simétrica en (" + i + "," + j + ")");
+            }
+            int hasta = Math.min(n, desde + alto);
+            for (int j = i; j < n; j++) {
+                double v = fila[j];
+                if (v < -1.0 || v > 1.0) throw new IllegalArgumentException("rho fuera de [-1,1] en (" + i + "," + j + "): " + v);
+                if (pendiente.remaining() < ancho) volcar();
+                if (simple) pendiente.putFloat((float) v);
+                else pendiente.putDouble(v);
+                if (j < hasta) franja[i * alto + (j - desde)] = simple ? (float) v : v;
+            }
+            huella = Mercado.huellaFila(huella, fila);
+            siguiente++;
+        }
+
+        // Bloque de columnas [d, d + alto): relee del archivo lo que las filas 0..d-1 guardaron en esas columnas
+        private void cargarFranja(int d) throws IOException {
+            volcar();
+            desde = d;
+            int w = Math.min(alto, n - d);
+            ByteBuffer b = nuevo(w * ancho);
+            for (int j = 0; j < d; j++) {
+                long p = (long) j * n - (long) j * (j - 1) / 2 + (d - j);
+                b.clear();
+                while (b.hasRemaining()) {
+                    if (ch.read(b, offsetMatriz + p * ancho + b.position()) < 0)
+                        throw new IOException("Snapshot temporal truncado: " + temporal);
+                }
+                b.flip();
+                for (int c = 0; c < w; c++) franja[j * alto + c] = simple ? b.getFloat() : b.getDouble();
+            }
+        }
+
+        private void volcar() throws IOException {
+            pendiente.flip();
+            escribirTodo(ch, pendiente);
+            pendiente.clear();
+        }
+
+        /** Con las n filas escritas publica la salida; si no, borra el temporal y falla */
+        @Override
+        public void close() throws IOException {
+            boolean completo = false;
+            try {
+                if (siguiente != n) throw new IllegalStateException("Faltan filas: " + siguiente + " de " + n);
+                volcar();
+                ByteBuffer h = nuevo(8).putLong(huella);
+                h.flip();
+                while (h.hasRemaining()) ch.write(h, POSICION_HUELLA + h.position());
+                ch.force(true);
+                completo = true;
+            } finally {
+                ch.close();
+                if (!completo) Files.deleteIfExists(temporal);
+            }
+            try {
+                Files.move(temporal, salida, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporal, salida, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporal);
+                throw e;
+            }
+        }
+    }
+
+    // ---------- Lectura ----------
+
+    /** Abre el snapshot mapeando el archivo; la matriz queda fuera del heap y no se copia */
+    public static Mercado abrir(Path ruta){
+        return abrir(ruta, null);
+    }
+
+    /**
+     * Abre el snapshot solo si se escribió desde el mercado de huella huellaEsperada (Mercado.huella);
+     * si el origen cambió después, el snapshot está desactualizado y se rechaza con IllegalArgumentException.
+     */
+    public static Mercado abrir(Path ruta, long huellaEsperada){
+        return abrir(ruta, Long.valueOf(huellaEsperada));
+    }
+
+    /** Huella del mercado de origen, guardada en la cabecera (sin abrir el resto) */
+    public static long huella(Path ruta){
+        try (FileChannel ch = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            ByteBuffer cab = nuevo(CABECERA);
+            while (cab.hasRemaining() && ch.read(cab) > 0) { }
+            if (cab.hasRemaining() || !Arrays.equals(Arrays.copyOf(cab.array(), MAGIA.length), MAGIA))
+                throw new IllegalArgumentException("No es un snapshot de mercado: " + ruta);
+            return cab.getLong(POSICION_HUELLA);
+        } catch (IOException e){
+            throw new RuntimeException("No pude leer " + ruta, e);
+        }
+    }
+
+    private static Mercado abrir(Path ruta, Long huellaEsperada){
+        try (FileChannel ch = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            long tam = ch.size();
+            if (tam < CABECERA) throw new IllegalArgumentException("Snapshot truncado: " + ruta);
+
+            ByteBuffer cab = ch.map(FileChannel.MapMode.READ_ONLY, 0, CABECERA).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magia = new byte[MAGIA.length];
+            cab.get(magia);
+            if (!Arrays.equals(magia, MAGIA)) throw new IllegalArgumentException("No es un snapshot de mercado: " + ruta);
+            int version = cab.getInt();
+            if (version != VERSION)
+                throw new IllegalArgumentException("Versión de snapshot no soportada: " + version + " (se espera " + VERSION + ")");
+            boolean simple = (cab.getInt() & FLAG_FLOAT) != 0;
+            int n = cab.getInt(), cantTipos = cab.getInt(), cantSectores = cab.getInt();
+            cab.getInt();
+            long offsetActivos = cab.getLong(), offsetMatriz = cab.getLong();
+            long huella = cab.getLong();
+            if (huellaEsperada != null && huella != huellaEsperada)
+                throw new IllegalArgumentException("Snapshot desactualizado: " + ruta + " se escribió desde otra versión del mercado");
+
+            long bytesMatriz = (long) n * (n + 1) / 2 * (simple ? Float.BYTES : Double.BYTES);
+            if (n <= 0 || cantTipos < 0 || cantSectores < 0
+                || offsetActivos < CABECERA || offsetMatriz < offsetActivos || offsetMatriz + bytesMatriz != tam)
+                throw new IllegalArgumentException("Cabecera de snapshot inconsistente: " + ruta);
+            if (bytesMatriz > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Matriz demasiado grande para un solo mapeo (" + n + " activos)");
+
+            // diccionario y tabla de activos
+            ByteBuffer tabla = ch.map(FileChannel.MapMode.READ_ONLY, CABECERA, offsetMatriz - CABECERA)
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+            String[] cats = new String[cantTipos + cantSectores];
+            for (int k = 0; k < cats.length; k++) cats[k] = leerString(tabla);
+            if (tabla.position() != offsetActivos - CABECERA)
+                throw new IllegalArgumentException("Diccionario de snapshot inconsistente: " + ruta);
+
+            List<Activo> activos = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int t = tabla.getInt(), s = tabla.getInt();
+                if (t < 0 || t >= cantTipos || s < 0 || s >= cantSectores)
+                    throw new IllegalArgumentException("Categoría fuera de rango en el activo " + i);
+                double retorno = tabla.getDouble(), sigma = tabla.getDouble(), montoMin = tabla.getDouble();
+                activos.add(new Activo(leerString(tabla), cats[t], cats[cantTipos + s], retorno, sigma, montoMin));
+            }
+
+            MappedByteBuffer matriz = ch.map(FileChannel.MapMode.READ_ONLY, offsetMatriz, bytesMatriz);
+            matriz.order(ByteOrder.LITTLE_ENDIAN);
+            return new Mercado(activos, MatrizCorrelacion.sobreBuffer(n, matriz, 0, simple));
+        } catch (IOException e){
+            throw new RuntimeException("No pude leer " + ruta, e);
+        } catch (java.nio.BufferUnderflowException e){
+            throw new IllegalArgumentException("Snapshot truncado: " + ruta, e);
+        }
+    }
+
+    // ---------- Utilidades ----------
+
+    private static ByteBuffer nuevo(int capacidad){
+        return ByteBuffer.allocate(capacidad).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer asegurar(ByteBuffer b, int extra){
+        if (b.remaining() >= extra) return b;
+        ByteBuffer m = nuevo(Math.max(b.capacity() * 2, b.position() + extra));
+        b.flip();
+        return m.put(b);
+    }
+
+    private static ByteBuffer poner(ByteBuffer b, String s){
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        b = asegurar(b, 4 + bytes.length);
+        return b.putInt(bytes.length).put(bytes);
+    }
+
+    private static String leerString(ByteBuffer b){
+        int largo = b.getInt();
+        if (largo < 0 || largo > b.remaining()) throw new IllegalArgumentException("String de snapshot inválido");
+        byte[] bytes = new byte[largo];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long alinear(long x){
+        return (x + 7) & ~7L;
+    }
+
+    private static void escribirTodo(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+}
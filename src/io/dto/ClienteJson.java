@@ -0,0 +1,14 @@
+package io.dto;
+
+import java.util.Map;
+
+/** Una línea del archivo de lote. Los límites omitidos toman los mismos valores generales que App. */
+public class ClienteJson {
+    public String nombre;
+    public String tipoPerfil;
+    public double presupuesto;
+    public double retornoDeseado;
+    public Double maxPorActivo;
+    public Map<String, Double> maxPorTipo;
+    public Map<String, Double> maxPorSector;
+}
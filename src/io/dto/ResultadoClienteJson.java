@@ -0,0 +1,15 @@
+package io.dto;
+
+import java.util.Map;
+
+/** Una línea del archivo de resultados del lote */
+public class ResultadoClienteJson {
+    public int linea;
+    public String nombre;
+    public String error;                 // null si se resolvió
+    public Double retorno, riesgo, gap;
+    public Boolean optimoProbado;
+    public Long nodos;
+    public Map<String, Double> montos;
+    public double ms;
+}
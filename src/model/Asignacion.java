@@ -1,5 +1,6 @@
 package model;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -9,6 +10,9 @@ public final class Asignacion {
     // Monto invertido por ticker 
     private final Map<String, Double> montoPorTicker;
 
+    // último soporte calculado (la asignación es inmutable, solo depende del mercado)
+    private volatile Soporte soporte;
+
     public Asignacion(Map<String, Double> montoPorTicker) {
         
         LinkedHashMap<String, Double> tmp = new LinkedHashMap<>();
@@ -49,4 +53,61 @@ public final class Asignacion {
     public Set<String> tickers() {
         return this.montoPorTicker.keySet();
     }
+
+    /**
+     * Activos con monto > 0 como índices del mercado, ordenados por índice.
+     * Los tickers que el mercado no conoce se ignoran. Se calcula una vez por mercado: O(k) búsquedas.
+     */
+    public Soporte soporte(Mercado m) {
+        Soporte s = this.soporte;
+        if (s != null && s.mercado == m) return s;
+        s = new Soporte(m, this.montoPorTicker);
+        this.soporte = s;
+        return s;
+    }
+
+    /** Soporte no nulo de una asignación: indices[t] es el activo y montos[t] su monto, t < k */
+    public static final class Soporte {
+        public final int k;
+        public final int[] indices;
+        public final double[] montos;
+        private final Mercado mercado;
+
+        private Soporte(Mercado m, Map<String, Double> montoPorTicker) {
+            int[] idx = new int[montoPorTicker.size()];
+            double[] mon = new double[montoPorTicker.size()];
+            int k = 0;
+            for (Map.Entry<String, Double> e : montoPorTicker.entrySet()) {
+                int i = m.indexOf(e.getKey());
+                double v = e.getValue();
+                if (i < 0 || v <= 0.0) continue;
+                // inserción por índice: las sumas no dependen del orden del mapa
+                int t = k++;
+                while (t > 0 && idx[t - 1] > i) {
+                    idx[t] = idx[t - 1];
+                    mon[t] = mon[t - 1];
+                    t--;
+                }
+                idx[t] = i;
+                mon[t] = v;
+            }
+            this.k = k;
+            this.indices = Arrays.copyOf(idx, k);
+            this.montos = Arrays.copyOf(mon, k);
+            this.mercado = m;
+        }
+
+        /** Pesos montos[t] / presupuesto, en el mismo orden que indices */
+        public double[] pesos(double presupuesto) {
+            double[] w = new double[k];
+            for (int t = 0; t < k; t++) w[t] = montos[t] / presupuesto;
+            return w;
+        }
+
+        public double total() {
+            double sum = 0.0;
+            for (int t = 0; t < k; t++) sum += montos[t];
+            return sum;
+        }
+    }
 }
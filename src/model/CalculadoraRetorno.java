@@ -6,12 +6,15 @@ public final class CalculadoraRetorno {
     // Retorno esperado de la cartera en decimales 
     // w_i = monto_i / presupuesto
     public static double retornoCartera(Mercado m, Asignacion a, double presupuesto){
-        int n = m.activos.size();
+        return retorno(m, a.soporte(m), presupuesto);
+    }
+
+    /** Retorno sobre el soporte de la asignación: O(k) en lugar de recorrer los n activos */
+    public static double retorno(Mercado m, Asignacion.Soporte s, double presupuesto){
         double suma = 0.0;
-        for (int i = 0; i < n; i++){
-            var act = m.activos.get(i);
-            double w = a.monto(act.ticker) / presupuesto; // peso del activo
-            suma += w * act.retorno;
+        for (int t = 0; t < s.k; t++){
+            double w = s.montos[t] / presupuesto; // peso del activo
+            suma += w * m.activos.get(s.indices[t]).retorno;
         }
         return suma;
     }
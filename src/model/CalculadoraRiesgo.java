@@ -1,32 +1,61 @@
 package model;
 
+/**
+ * Riesgo (sigma) de una cartera contra la covarianza del mercado (vista escalada de rho, ver Mercado.covarianza).
+ * Una cartera tiene pocos activos con monto, así que se suman los k² pares de la covarianza
+ * en lugar de recorrer la matriz entera; con muchos activos se usa la forma cuadrática densa.
+ */
 public final class CalculadoraRiesgo {
     private CalculadoraRiesgo(){}
 
+    // hasta cuántos activos con peso conviene sumar pares (k²) en vez de recorrer filas (k·n)
+    private static final int MAX_DISPERSO = 64;
+
     public static double riesgoCartera(Mercado m, Asignacion a, double presupuesto) {
-        int n = m.activos.size();
-        double[] w = new double[n];
-        for (int i = 0; i < n; i++) {
-            var t = m.activos.get(i).ticker;
-            w[i] = a.monto(t) / presupuesto;
+        // solo los activos con monto: k búsquedas por ticker en lugar de n
+        return riesgo(m, a.soporte(m), presupuesto);
+    }
+
+    /** Riesgo sobre el soporte de la asignación: O(k²) */
+    public static double riesgo(Mercado m, Asignacion.Soporte s, double presupuesto) {
+        return riesgo(m, s.indices, s.pesos(presupuesto), s.k);
+    }
+
+    /** Riesgo de un vector de pesos denso (w[i] = monto_i / presupuesto, en el orden del mercado) */
+    public static double riesgo(Mercado m, double[] w) {
+        int k = 0;
+        for (double x : w) if (x != 0.0) k++;
+        if (k > MAX_DISPERSO) return raiz(m.covarianza().formaCuadratica(w));
+        int[] idx = new int[k];
+        double[] wk = new double[k];
+        k = 0;
+        for (int i = 0; i < w.length; i++) {
+            if (w[i] == 0.0) continue;
+            idx[k] = i;
+            wk[k++] = w[i];
         }
-       
-        double[] v = new double[n];
-        for (int i = 0; i < n; i++) {
-            v[i] = m.activos.get(i).sigma * w[i];
+        return riesgo(m, idx, wk, k);
+    }
+
+    /** Riesgo de k pesos: w[t] es el peso del activo idx[t] */
+    public static double riesgo(Mercado m, int[] idx, double[] w, int k) {
+        MatrizCorrelacion cov = m.covarianza();
+        if (k > MAX_DISPERSO) {
+            double[] denso = new double[cov.n()];
+            for (int t = 0; t < k; t++) denso[idx[t]] += w[t];
+            return raiz(cov.formaCuadratica(denso));
         }
-        
-        double[] u = new double[n];
-        for (int i = 0; i < n; i++) {
+        double quad = 0.0;
+        for (int a = 0; a < k; a++) {
+            int i = idx[a];
             double acc = 0.0;
-            for (int j = 0; j < n; j++) {
-                acc += m.rho[i][j] * v[j];
-            }
-            u[i] = acc;
+            for (int b = 0; b < k; b++) acc += cov.get(i, idx[b]) * w[b];
+            quad += w[a] * acc;
         }
-        
-        double quad = 0.0;
-        for (int i = 0; i < n; i++) quad += v[i] * u[i];
+        return raiz(quad);
+    }
+
+    private static double raiz(double quad) {
         return Math.sqrt(Math.max(0.0, quad));
     }
 }
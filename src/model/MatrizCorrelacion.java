@@ -0,0 +1,590 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Matriz de correlaciones simétrica n x n detrás de una API de acceso, con varias disposiciones en memoria:
+ * <ul>
+ *   <li>FILAS: double[n][n] tal cual (sin copia, la forma histórica).</li>
+ *   <li>CONTIGUA: un solo double[n*n] por filas; misma memoria, filas contiguas.</li>
+ *   <li>TRIANGULAR: triángulo superior empaquetado en double[n(n+1)/2]; la mitad de memoria.</li>
+ *   <li>TRIANGULAR_FLOAT: igual en float; un cuarto de la memoria, ~7 dígitos de precisión.</li>
+ *   <li>FUERA_DEL_HEAP / FUERA_DEL_HEAP_FLOAT: triángulo superior en un ByteBuffer directo (o mapeado).</li>
+ * </ul>
+ * {@link #conCambios} arma una versión con algunas entradas distintas sin copiar la matriz: informa la
+ * disposición de la original, que comparte.
+ * Los recorridos calientes (forma cuadrática y suma de filas) están en cada implementación,
+ * así cada disposición recorre su memoria en orden; en las de double[] el producto punto de
+ * cada fila pasa por {@link ProductoPunto#ACTUAL}.
+ */
+public abstract class MatrizCorrelacion {
+
+    public enum Disposicion { FILAS, CONTIGUA, TRIANGULAR, TRIANGULAR_FLOAT, FUERA_DEL_HEAP, FUERA_DEL_HEAP_FLOAT }
+
+    /** Provee la fila i completa de la matriz (para construir sin tener el double[][] entero) */
+    @FunctionalInterface
+    public interface FuenteFilas {
+        void fila(int i, double[] destino);
+    }
+
+    // en float la parte guardada ya viene redondeada (~6e-8), de ahí la tolerancia mayor
+    private static final double TOL_SIMETRIA = 1e-9, TOL_SIMETRIA_FLOAT = 1e-6;
+
+    protected final int n;
+
+    MatrizCorrelacion(int n) {
+        this.n = n;
+    }
+
+    public final int n() { return n; }
+
+    public abstract Disposicion disposicion();
+
+    public abstract double get(int i, int j);
+
+    /** Copia la fila i en destino (largo >= n) */
+    public abstract void fila(int i, double[] destino);
+
+    /** acc[j] += escala * rho[i][j] para todo j */
+    public abstract void sumarFila(int i, double escala, double[] acc);
+
+    /** vᵗ·rho·v; las filas con v[i] == 0 no se recorren */
+    public abstract double formaCuadratica(double[] v);
+
+    /** Memoria ocupada por los valores */
+    public abstract long bytes();
+
+    // ---------- Construcción ----------
+
+    /** Envuelve o copia una matriz ya armada. FILAS no copia. */
+    public static MatrizCorrelacion de(double[][] rho, Disposicion d) {
+        if (rho == null) throw new IllegalArgumentException("Matriz de correlaciones nula");
+        int n = rho.length;
+        for (int i = 0; i < n; i++) {
+            if (rho[i] == null || rho[i].length != n)
+                throw new IllegalArgumentException("rho no es n x n (fila " + i + ")");
+        }
+        if (d == Disposicion.FILAS) return new Filas(rho);
+        return desdeFilas(n, d, (i, destino) -> System.arraycopy(rho[i], 0, destino, 0, n));
+    }
+
+    /**
+     * Arma la matriz fila por fila, en orden. Cada fila se compara contra lo ya guardado
+     * (rho[i][j] vs rho[j][i], j < i), así la simetría se verifica al vuelo en cualquier disposición;
+     * las triangulares además descartan la parte inferior.
+     */
+    public static MatrizCorrelacion desdeFilas(int n, Disposicion d, FuenteFilas fuente) {
+        if (n <= 0) throw new IllegalArgumentException("n debe ser > 0");
+        double[] f = new double[n];
+        switch (d) {
+            case FILAS: {
+                Filas t = new Filas(new double[n][]);
+                for (int i = 0; i < n; i++) {
+                    fuente.fila(i, f);
+                    simetrica(t, i, f);
+                    t.rho[i] = f.clone();
+                }
+                return t;
+            }
+            case CONTIGUA: {
+                Contigua t = new Contigua(n, new double[tamanio((long) n * n, 1, d)]);
+                for (int i = 0; i < n; i++) {
+                    fuente.fila(i, f);
+                    simetrica(t, i, f);
+                    System.arraycopy(f, 0, t.a, i * n, n);
+                }
+                return t;
+            }
+            case TRIANGULAR: {
+                Triangular t = new Triangular(n, new double[tamanio(triangulo(n), 1, d)]);
+                for (int i = 0; i < n; i++) {
+                    fuente.fila(i, f);
+                    simetrica(t, i, f);
+                    System.arraycopy(f, i, t.a, t.inicio(i), n - i);
+                }
+                return t;
+            }
+            case TRIANGULAR_FLOAT: {
+                TriangularFloat t = new TriangularFloat(n, new float[tamanio(triangulo(n), 1, d)]);
+                for (int i = 0; i < n; i++) {
+                    fuente.fila(i, f);
+                    simetrica(t, i, f);
+                    int base = t.inicio(i) - i;
+                    for (int j = i; j < n; j++) t.a[base + j] = (float) f[j];
+                }
+                return t;
+            }
+            case FUERA_DEL_HEAP:
+            case FUERA_DEL_HEAP_FLOAT: {
+                boolean simple = d == Disposicion.FUERA_DEL_HEAP_FLOAT;
+                int ancho = simple ? Float.BYTES : Double.BYTES;
+                ByteBuffer buf = ByteBuffer.allocateDirect(tamanio(triangulo(n), ancho, d))
+                                           .order(ByteOrder.nativeOrder());
+                TriangularBuffer t = new TriangularBuffer(n, buf, 0, simple);
+                for (int i = 0; i < n; i++) {
+                    fuente.fila(i, f);
+                    simetrica(t, i, f);
+                    int base = t.inicio(i) - i;
+                    for (int j = i; j < n; j++) {
+                        if (simple) buf.putFloat((base + j) * 4, (float) f[j]);
+                        else buf.putDouble((base + j) * 8, f[j]);
+                    }
+                }
+                return t;
+            }
+            default:
+                throw new IllegalArgumentException("Disposición no soportada: " + d);
+        }
+    }
+
+    /**
+     * Vista simétrica s_i·s_j·rho_ij sobre rho, sin copiarla (con s = sigma es la covarianza
+     * diag(sigma)·rho·diag(sigma)). Cada lectura escala la de rho: ocupa solo s, y una rho mapeada
+     * de un snapshot sigue fuera del heap.
+     */
+    public static MatrizCorrelacion escalada(MatrizCorrelacion rho, double[] s) {
+        int n = rho.n();
+        if (s.length != n) throw new IllegalArgumentException("Escala de largo " + s.length + " para una matriz de " + n);
+        return new Escalada(rho, s.clone());
+    }
+
+    /**
+     * Triángulo superior ya empaquetado en un buffer (directo o mapeado de un archivo), sin copiar.
+     * El buffer debe tener n(n+1)/2 valores desde offset, en el orden de bytes del buffer.
+     */
+    public static MatrizCorrelacion sobreBuffer(int n, ByteBuffer buf, int offset, boolean simple) {
+        long necesarios = triangulo(n) * (simple ? Float.BYTES : Double.BYTES);
+        if (offset < 0 || offset + necesarios > buf.limit())
+            throw new IllegalArgumentException("El buffer no alcanza para una matriz de " + n + " x " + n);
+        return new TriangularBuffer(n, buf, offset, simple);
+    }
+
+    static long triangulo(int n) {
+        return (long) n * (n + 1) / 2;
+    }
+
+    private static int tamanio(long valores, int ancho, Disposicion d) {
+        long total = valores * ancho;
+        if (total > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Matriz demasiado grande para " + d + " (" + total + " posiciones)");
+        return (int) total;
+    }
+
+    private static boolean flotante(Disposicion d) {
+        return d == Disposicion.TRIANGULAR_FLOAT || d == Disposicion.FUERA_DEL_HEAP_FLOAT;
+    }
+
+    private static void simetrica(MatrizCorrelacion t, int i, double[] f) {
+        double tol = flotante(t.disposicion()) ? TOL_SIMETRIA_FLOAT : TOL_SIMETRIA;
+        for (int j = 0; j < i; j++) {
+            if (Math.abs(f[j] - t.get(j, i)) > tol)
+                throw new IllegalArgumentException("rho no simétrica en (" + i + "," + j + ")");
+        }
+    }
+
+    // ---------- Cambios (copy-on-write) ----------
+
+    /**
+     * Matriz igual a ésta salvo en (filas[t], columnas[t]) y su simétrica, que pasan a valer valores[t].
+     * No copia los valores: la nueva comparte la matriz original y guarda aparte, por fila, las entradas
+     * cambiadas; las filas de cambios que no se tocan también se comparten entre versiones sucesivas.
+     * Cuando lo cambiado pasa de 1/16 de la matriz se rearma entera en la misma disposición.
+     */
+    public MatrizCorrelacion conCambios(int[] filas, int[] columnas, double[] valores) {
+        if (filas.length != columnas.length || filas.length != valores.length)
+            throw new IllegalArgumentException("Cambios de largos distintos");
+        Parcheada previa = this instanceof Parcheada ? (Parcheada) this : null;
+        MatrizCorrelacion base = previa != null ? previa.base : this;
+        boolean simple = flotante(disposicion());
+
+        // cambios por fila, cada uno también en su simétrica
+        Map<Integer, TreeMap<Integer, Double>> porFila = new HashMap<>();
+        for (int t = 0; t < filas.length; t++) {
+            int i = filas[t], j = columnas[t];
+            if (i < 0 || j < 0 || i >= n || j >= n)
+                throw new IllegalArgumentException("Posición fuera de la matriz: (" + i + "," + j + ")");
+            double v = simple ? (float) valores[t] : valores[t];
+            porFila.computeIfAbsent(i, x -> new TreeMap<>()).put(j, v);
+            porFila.computeIfAbsent(j, x -> new TreeMap<>()).put(i, v);
+        }
+
+        Parcheada.Fila[] nuevas = previa != null ? previa.filas.clone() : new Parcheada.Fila[n];
+        int entradas = previa != null ? previa.entradas : 0;
+        for (var e : porFila.entrySet()) {
+            int i = e.getKey();
+            TreeMap<Integer, Double> fila = new TreeMap<>();
+            Parcheada.Fila f = nuevas[i];
+            if (f != null) {
+                for (int t = 0; t < f.cols.length; t++) fila.put(f.cols[t], f.vals[t]);
+                entradas -= f.cols.length;
+            }
+            fila.putAll(e.getValue());
+            fila.entrySet().removeIf(x -> x.getValue() == base.get(i, x.getKey()));
+            nuevas[i] = fila.isEmpty() ? null : new Parcheada.Fila(base, i, fila);
+            entradas += fila.size();
+        }
+        Parcheada r = new Parcheada(base, nuevas, entradas);
+        if ((long) entradas * 16 > (long) n * n) return desdeFilas(n, base.disposicion(), r::fila);
+        return r;
+    }
+
+    /**
+     * Posiciones (i <= j, empaquetadas como (long) i << 32 | j, en orden) en que difieren dos versiones
+     * de una misma matriz armadas con conCambios. null si no se puede saber sin recorrerlas enteras
+     * (matrices sin relación o una versión rearmada).
+     */
+    public static long[] diferencias(MatrizCorrelacion antes, MatrizCorrelacion ahora) {
+        if (antes == ahora) return new long[0];
+        if (antes.n() != ahora.n() || Parcheada.base(antes) != Parcheada.base(ahora)) return null;
+        Parcheada.Fila[] fa = antes instanceof Parcheada ? ((Parcheada) antes).filas : null;
+        Parcheada.Fila[] fb = ahora instanceof Parcheada ? ((Parcheada) ahora).filas : null;
+        TreeSet<Long> pos = new TreeSet<>();
+        for (int i = 0; i < antes.n(); i++) {
+            Parcheada.Fila a = fa != null ? fa[i] : null, b = fb != null ? fb[i] : null;
+            if (a == b) continue;  // fila de cambios compartida
+            for (Parcheada.Fila f : new Parcheada.Fila[]{ a, b }) {
+                if (f == null) continue;
+                for (int c : f.cols) {
+                    if (c >= i && antes.get(i, c) != ahora.get(i, c)) pos.add((long) i << 32 | c);
+                }
+            }
+        }
+        long[] r = new long[pos.size()];
+        int t = 0;
+        for (long x : pos) r[t++] = x;
+        return r;
+    }
+
+    // ---------- Implementaciones ----------
+
+    private static final class Filas extends MatrizCorrelacion {
+        final double[][] rho;
+
+        Filas(double[][] rho) {
+            super(rho.length);
+            this.rho = rho;
+        }
+
+        public Disposicion disposicion() { return Disposicion.FILAS; }
+        public double get(int i, int j) { return rho[i][j]; }
+        public void fila(int i, double[] destino) { System.arraycopy(rho[i], 0, destino, 0, n); }
+        public long bytes() { return (long) n * n * Double.BYTES; }
+
+        public void sumarFila(int i, double escala, double[] acc) {
+            double[] f = rho[i];
+            for (int j = 0; j < n; j++) acc[j] += escala * f[j];
+        }
+
+        public double formaCuadratica(double[] v) {
+            double quad = 0.0;
+            for (int i = 0; i < n; i++) {
+                if (v[i] == 0.0) continue;
+                quad += v[i] * ProductoPunto.ACTUAL.punto(rho[i], 0, v, 0, n);
+            }
+            return quad;
+        }
+    }
+
+    private static final class Contigua extends MatrizCorrelacion {
+        final double[] a;
+
+        Contigua(int n, double[] a) {
+            super(n);
+            this.a = a;
+        }
+
+        public Disposicion disposicion() { return Disposicion.CONTIGUA; }
+        public double get(int i, int j) { return a[i * n + j]; }
+        public void fila(int i, double[] destino) { System.arraycopy(a, i * n, destino, 0, n); }
+        public long bytes() { return (long) a.length * Double.BYTES; }
+
+        public void sumarFila(int i, double escala, double[] acc) {
+            int base = i * n;
+            for (int j = 0; j < n; j++) acc[j] += escala * a[base + j];
+        }
+
+        public double formaCuadratica(double[] v) {
+            double quad = 0.0;
+            for (int i = 0; i < n; i++) {
+                if (v[i] == 0.0) continue;
+                quad += v[i] * ProductoPunto.ACTUAL.punto(a, i * n, v, 0, n);
+            }
+            return quad;
+        }
+    }
+
+    /**
+     * Base de las disposiciones triangulares: la fila i guarda las columnas i..n-1
+     * a partir de inicio(i) = i*n - i(i-1)/2. La parte j < i de una fila se lee por columna.
+     */
+    private abstract static class Empaquetada extends MatrizCorrelacion {
+        Empaquetada(int n) {
+            super(n);
+        }
+
+        final int inicio(int i) {
+            return (int) ((long) i * n - (long) i * (i - 1) / 2);
+        }
+
+        /** Valor en la posición empaquetada p */
+        abstract double en(int p);
+
+        public final double get(int i, int j) {
+            if (i > j) { int t = i; i = j; j = t; }
+            return en(inicio(i) + j - i);
+        }
+
+        public void fila(int i, double[] destino) {
+            for (int j = 0; j < i; j++) destino[j] = en(inicio(j) + i - j);
+            int base = inicio(i) - i;
+            for (int j = i; j < n; j++) destino[j] = en(base + j);
+        }
+
+        public void sumarFila(int i, double escala, double[] acc) {
+            // columna i por encima de la diagonal: el paso entre filas j y j+1 es n-j-1
+            int p = i;
+            for (int j = 0; j < i; j++) {
+                acc[j] += escala * en(p);
+                p += n - j - 1;
+            }
+            int base = inicio(i) - i;
+            for (int j = i; j < n; j++) acc[j] += escala * en(base + j);
+        }
+
+        // vᵗ·rho·v = Σ v_i² rho_ii + 2 Σ_{i<j} v_i v_j rho_ij: recorre el triángulo en orden
+        public double formaCuadratica(double[] v) {
+            double quad = 0.0;
+            for (int i = 0; i < n; i++) {
+                double vi = v[i];
+                if (vi == 0.0) continue;
+                int base = inicio(i) - i;
+                double acc = 0.0;
+                for (int j = i + 1; j < n; j++) acc += en(base + j) * v[j];
+                quad += vi * (vi * en(base + i) + 2.0 * acc);
+            }
+            return quad;
+        }
+    }
+
+    private static final class Triangular extends Empaquetada {
+        final double[] a;
+
+        Triangular(int n, double[] a) {
+            super(n);
+            this.a = a;
+        }
+
+        public Disposicion disposicion() { return Disposicion.TRIANGULAR; }
+        double en(int p) { return a[p]; }
+        public long bytes() { return (long) a.length * Double.BYTES; }
+
+        @Override
+        public void fila(int i, double[] destino) {
+            for (int j = 0; j < i; j++) destino[j] = a[inicio(j) + i - j];
+            System.arraycopy(a, inicio(i), destino, i, n - i);
+        }
+
+        // mismos recorridos que Empaquetada, con acceso directo al arreglo (camino caliente del B&B)
+        @Override
+        public void sumarFila(int i, double escala, double[] acc) {
+            int p = i;
+            for (int j = 0; j < i; j++) {
+                acc[j] += escala * a[p];
+                p += n - j - 1;
+            }
+            int base = inicio(i) - i;
+            for (int j = i; j < n; j++) acc[j] += escala * a[base + j];
+        }
+
+        @Override
+        public double formaCuadratica(double[] v) {
+            double quad = 0.0;
+            for (int i = 0; i < n; i++) {
+                double vi = v[i];
+                if (vi == 0.0) continue;
+                int p = inicio(i);
+                double acc = ProductoPunto.ACTUAL.punto(a, p + 1, v, i + 1, n - i - 1);
+                quad += vi * (vi * a[p] + 2.0 * acc);
+            }
+            return quad;
+        }
+    }
+
+    private static final class TriangularFloat extends Empaquetada {
+        final float[] a;
+
+        TriangularFloat(int n, float[] a) {
+            super(n);
+            this.a = a;
+        }
+
+        public Disposicion disposicion() { return Disposicion.TRIANGULAR_FLOAT; }
+        double en(int p) { return a[p]; }
+        public long bytes() { return (long) a.length * Float.BYTES; }
+
+        @Override
+        public void sumarFila(int i, double escala, double[] acc) {
+            int p = i;
+            for (int j = 0; j < i; j++) {
+                acc[j] += escala * a[p];
+                p += n - j - 1;
+            }
+            int base = inicio(i) - i;
+            for (int j = i; j < n; j++) acc[j] += escala * a[base + j];
+        }
+
+        @Override
+        public double formaCuadratica(double[] v) {
+            double quad = 0.0;
+            for (int i = 0; i < n; i++) {
+                double vi = v[i];
+                if (vi == 0.0) continue;
+                int base = inicio(i) - i;
+                double acc = 0.0;
+                for (int j = i + 1; j < n; j++) acc += a[base + j] * v[j];
+                quad += vi * (vi * a[base + i] + 2.0 * acc);
+            }
+            return quad;
+        }
+    }
+
+    private static final class TriangularBuffer extends Empaquetada {
+        private final ByteBuffer buf;
+        private final int offset;
+        private final boolean simple;
+
+        TriangularBuffer(int n, ByteBuffer buf, int offset, boolean simple) {
+            super(n);
+            this.buf = buf;
+            this.offset = offset;
+            this.simple = simple;
+        }
+
+        public Disposicion disposicion() {
+            return simple ? Disposicion.FUERA_DEL_HEAP_FLOAT : Disposicion.FUERA_DEL_HEAP;
+        }
+
+        // lecturas absolutas: no tocan la posición del buffer, así se comparte entre hilos
+        double en(int p) {
+            return simple ? buf.getFloat(offset + p * 4) : buf.getDouble(offset + p * 8);
+        }
+
+        public long bytes() { return triangulo(n) * (simple ? Float.BYTES : Double.BYTES); }
+    }
+
+    /** rho escalada por s a cada lectura (ver {@link #escalada}) */
+    private static final class Escalada extends MatrizCorrelacion {
+        private final MatrizCorrelacion rho;
+        private final double[] s;
+
+        Escalada(MatrizCorrelacion rho, double[] s) {
+            super(rho.n());
+            this.rho = rho;
+            this.s = s;
+        }
+
+        public Disposicion disposicion() { return rho.disposicion(); }
+        public long bytes() { return (long) n * Double.BYTES; }
+
+        // s_i·s_j es conmutativo: (i, j) y (j, i) dan exactamente el mismo valor
+        public double get(int i, int j) { return rho.get(i, j) * (s[i] * s[j]); }
+
+        public void fila(int i, double[] destino) {
+            rho.fila(i, destino);
+            for (int j = 0; j < n; j++) destino[j] *= s[i] * s[j];
+        }
+
+        public void sumarFila(int i, double escala, double[] acc) {
+            double[] f = new double[n];
+            fila(i, f);
+            for (int j = 0; j < n; j++) acc[j] += escala * f[j];
+        }
+
+        // v·cov·v = (s∘v)·rho·(s∘v)
+        public double formaCuadratica(double[] v) {
+            double[] w = new double[n];
+            for (int i = 0; i < n; i++) w[i] = s[i] * v[i];
+            return rho.formaCuadratica(w);
+        }
+    }
+
+    /**
+     * Matriz original más las entradas cambiadas. Por fila: columnas en orden, valor nuevo y diferencia
+     * con la original; los recorridos calientes recorren la original y corrigen solo esas entradas.
+     */
+    private static final class Parcheada extends MatrizCorrelacion {
+        /** Cambios de una fila; inmutable, se comparte entre versiones */
+        static final class Fila {
+            final int[] cols;
+            final double[] vals, difs;
+
+            Fila(MatrizCorrelacion base, int i, TreeMap<Integer, Double> cambios) {
+                int k = cambios.size();
+                cols = new int[k];
+                vals = new double[k];
+                difs = new double[k];
+                int t = 0;
+                for (var e : cambios.entrySet()) {
+                    cols[t] = e.getKey();
+                    vals[t] = e.getValue();
+                    difs[t] = vals[t] - base.get(i, cols[t]);
+                    t++;
+                }
+            }
+        }
+
+        final MatrizCorrelacion base;
+        final Fila[] filas;  // null = fila sin cambios
+        final int entradas;
+
+        Parcheada(MatrizCorrelacion base, Fila[] filas, int entradas) {
+            super(base.n());
+            this.base = base;
+            this.filas = filas;
+            this.entradas = entradas;
+        }
+
+        static MatrizCorrelacion base(MatrizCorrelacion m) {
+            return m instanceof Parcheada ? ((Parcheada) m).base : m;
+        }
+
+        public Disposicion disposicion() { return base.disposicion(); }
+        public long bytes() { return base.bytes() + (long) entradas * (Integer.BYTES + 2 * Double.BYTES); }
+
+        public double get(int i, int j) {
+            Fila f = filas[i];
+            if (f != null) {
+                int t = Arrays.binarySearch(f.cols, j);
+                if (t >= 0) return f.vals[t];
+            }
+            return base.get(i, j);
+        }
+
+        public void fila(int i, double[] destino) {
+            base.fila(i, destino);
+            Fila f = filas[i];
+            if (f != null) for (int t = 0; t < f.cols.length; t++) destino[f.cols[t]] = f.vals[t];
+        }
+
+        public void sumarFila(int i, double escala, double[] acc) {
+            base.sumarFila(i, escala, acc);
+            Fila f = filas[i];
+            if (f != null) for (int t = 0; t < f.cols.length; t++) acc[f.cols[t]] += escala * f.difs[t];
+        }
+
+        // cada entrada fuera de la diagonal está en sus dos filas, así que la corrección cuenta ambas
+        public double formaCuadratica(double[] v) {
+            double quad = base.formaCuadratica(v);
+            for (int i = 0; i < n; i++) {
+                Fila f = filas[i];
+                if (f == null || v[i] == 0.0) continue;
+                double acc = 0.0;
+                for (int t = 0; t < f.cols.length; t++) acc += f.difs[t] * v[f.cols[t]];
+                quad += v[i] * acc;
+            }
+            return quad;
+        }
+    }
+}
@@ -4,18 +4,228 @@ import java.util.*;
 
 public final class Mercado {
     public final List<Activo> activos;
-    public final double[][] rho;                  // matriz de correlaciones n x n
+    public final MatrizCorrelacion correlaciones; // matriz de correlaciones n x n
     public final Map<String,Integer> idxPorTicker;
+    private volatile Long huella;                 // se calcula una vez, a demanda
+    private volatile MatrizCorrelacion covarianza;  // idem (vista sobre correlaciones, sin copia)
 
+    /** Envuelve la matriz tal cual (disposición FILAS, sin copia) */
     public Mercado(List<Activo> activos, double[][] rho) {
+        this(activos, MatrizCorrelacion.de(rho, MatrizCorrelacion.Disposicion.FILAS));
+    }
+
+    public Mercado(List<Activo> activos, MatrizCorrelacion correlaciones) {
         this.activos = List.copyOf(activos);
-        this.rho = rho;
+        this.correlaciones = correlaciones;
         var map = new HashMap<String,Integer>();
         for (int i = 0; i < activos.size(); i++) map.put(activos.get(i).ticker, i);
         this.idxPorTicker = Collections.unmodifiableMap(map);
     }
 
+    // versión armada por un Delta: mismos tickers en el mismo orden
+    private Mercado(List<Activo> activos, MatrizCorrelacion correlaciones, Map<String,Integer> idxPorTicker) {
+        this.activos = List.copyOf(activos);
+        this.correlaciones = correlaciones;
+        this.idxPorTicker = idxPorTicker;
+    }
+
+    /** Cambios sobre este mercado; Delta.aplicar() arma la versión nueva y este queda igual */
+    public Delta cambios(){ return new Delta(this); }
+
+    /**
+     * Activos que cambiaron (retorno, sigma, montoMin, tipo, sector o alguna de sus correlaciones)
+     * respecto de anterior; null si no son versiones comparables (otros tickers, o matrices sin
+     * relación que habría que recorrer enteras).
+     */
+    public boolean[] activosCambiadosDesde(Mercado anterior){
+        int n = activos.size();
+        if (anterior.activos.size() != n) return null;
+        long[] pares = MatrizCorrelacion.diferencias(anterior.correlaciones, correlaciones);
+        if (pares == null) return null;
+        boolean[] c = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Activo a = anterior.activos.get(i), b = activos.get(i);
+            if (a == b) continue;
+            if (!a.ticker.equals(b.ticker)) return null;
+            c[i] = a.retorno != b.retorno || a.sigma != b.sigma || a.montoMin != b.montoMin
+                || !a.tipo.equals(b.tipo) || !a.sector.equals(b.sector);
+        }
+        for (long x : pares) {
+            c[(int) (x >>> 32)] = true;
+            c[(int) x] = true;
+        }
+        return c;
+    }
+
     public int indexOf(String ticker){ return idxPorTicker.getOrDefault(ticker, -1); }
+
+    /** Correlación entre los activos i y j */
+    public double rho(int i, int j){ return correlaciones.get(i, j); }
+
+    /** Covarianza diag(sigma)·rho·diag(sigma) como vista escalada de rho (MatrizCorrelacion.escalada): no copia la matriz */
+    public MatrizCorrelacion covarianza(){
+        MatrizCorrelacion c = covarianza;
+        if (c == null) {
+            synchronized (this) {
+                c = covarianza;
+                if (c == null) {
+                    double[] sigma = new double[activos.size()];
+                    for (int i = 0; i < sigma.length; i++) sigma[i] = activos.get(i).sigma;
+                    covarianza = c = MatrizCorrelacion.escalada(correlaciones, sigma);
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Huella de 64 bits de activos y correlaciones: cambia si cambia cualquier dato del mercado */
+    public long huella(){
+        Long h = huella;
+        if (h == null) {
+            long x = huellaActivos(activos);
+            // por filas completas: la huella no depende de la disposición en memoria
+            int n = correlaciones.n();
+            double[] fila = new double[n];
+            for (int i = 0; i < n; i++) {
+                correlaciones.fila(i, fila);
+                x = huellaFila(x, fila);
+            }
+            huella = h = x;
+        }
+        return h;
+    }
+
+    /** Comienzo de {@link #huella} (los activos); sigue con huellaFila para cada fila de rho, en orden */
+    public static long huellaActivos(List<Activo> activos){
+        long x = 1125899906842597L;
+        for (Activo a : activos) {
+            x = 31 * x + a.ticker.hashCode();
+            x = 31 * x + a.tipo.hashCode();
+            x = 31 * x + a.sector.hashCode();
+            x = 31 * x + Double.doubleToLongBits(a.retorno);
+            x = 31 * x + Double.doubleToLongBits(a.sigma);
+            x = 31 * x + Double.doubleToLongBits(a.montoMin);
+        }
+        return x;
+    }
+
+    /** Agrega a la huella parcial h la siguiente fila completa de rho */
+    public static long huellaFila(long h, double[] fila){
+        for (double v : fila) h = 31 * h + Double.doubleToLongBits(v);
+        return h;
+    }
+
+    /**
+     * Cambios de atributos de activos y de correlaciones sueltas. La versión nueva comparte con la
+     * anterior la matriz (solo guarda las entradas cambiadas, ver MatrizCorrelacion.conCambios), el
+     * índice por ticker y los Activo sin cambios; si la anterior ya tenía calculada la huella, la de la
+     * nueva sale de ajustarla en lo cambiado. No valida: eso lo hace
+     * ValidadorMercado.validarCambios, solo sobre lo cambiado.
+     */
+    public static final class Delta {
+        private final Mercado base;
+        private final TreeMap<Integer, Activo> activos = new TreeMap<>();
+        private final LinkedHashMap<Long, Double> rho = new LinkedHashMap<>();
+
+        private Delta(Mercado base){ this.base = base; }
+
+        public Delta retorno(String ticker, double retorno){
+            Activo a = actual(ticker);
+            return activo(new Activo(a.ticker, a.tipo, a.sector, retorno, a.sigma, a.montoMin));
+        }
+
+        public Delta sigma(String ticker, double sigma){
+            Activo a = actual(ticker);
+            return activo(new Activo(a.ticker, a.tipo, a.sector, a.retorno, sigma, a.montoMin));
+        }
+
+        public Delta montoMin(String ticker, double montoMin){
+            Activo a = actual(ticker);
+            return activo(new Activo(a.ticker, a.tipo, a.sector, a.retorno, a.sigma, montoMin));
+        }
+
+        /** Reemplaza el activo del mismo ticker (también tipo y sector) */
+        public Delta activo(Activo a){
+            activos.put(indice(a.ticker), a);
+            return this;
+        }
+
+        /** Correlación entre dos activos distintos (y su simétrica) */
+        public Delta rho(String ticker1, String ticker2, double valor){
+            int i = indice(ticker1), j = indice(ticker2);
+            if (i == j) throw new IllegalArgumentException("La correlación de " + ticker1 + " consigo mismo es 1");
+            rho.put((long) Math.min(i, j) << 32 | Math.max(i, j), valor);
+            return this;
+        }
+
+        private int indice(String ticker){
+            int i = base.indexOf(ticker);
+            if (i < 0) throw new IllegalArgumentException("Ticker inexistente: " + ticker);
+            return i;
+        }
+
+        private Activo actual(String ticker){
+            Activo a = activos.get(indice(ticker));
+            return a != null ? a : base.activos.get(indice(ticker));
+        }
+
+        public Mercado aplicar(){
+            int n = base.activos.size(), k = rho.size();
+            List<Activo> lista = base.activos;
+            if (!activos.isEmpty()) {
+                Activo[] arr = lista.toArray(new Activo[0]);
+                for (var e : activos.entrySet()) arr[e.getKey()] = e.getValue();
+                lista = Arrays.asList(arr);
+            }
+            int[] fi = new int[k], co = new int[k];
+            double[] va = new double[k];
+            int t = 0;
+            for (var e : rho.entrySet()) {
+                fi[t] = (int) (e.getKey() >>> 32);
+                co[t] = (int) (long) e.getKey();
+                va[t++] = e.getValue();
+            }
+            MatrizCorrelacion corr = k == 0 ? base.correlaciones : base.correlaciones.conCambios(fi, co, va);
+            Mercado m = new Mercado(lista, corr, base.idxPorTicker);
+
+            Long h = base.huella;
+            if (h != null) m.huella = ajustarHuella(h, m);
+            return m;
+        }
+
+        // la huella es un polinomio en 31 sobre 6 valores por activo y luego rho por filas:
+        // cambiar el valor en la posición p suma (nuevo - viejo)·31^(N-1-p)
+        private long ajustarHuella(long h, Mercado m){
+            int n = base.activos.size();
+            long total = 6L * n + (long) n * n;
+            for (int i : activos.keySet()) {
+                long[] antes = valores(base.activos.get(i)), ahora = valores(m.activos.get(i));
+                for (int f = 0; f < 6; f++) h += (ahora[f] - antes[f]) * potencia31(total - 1 - (6L * i + f));
+            }
+            for (long x : rho.keySet()) {
+                int i = (int) (x >>> 32), j = (int) x;
+                long d = Double.doubleToLongBits(m.correlaciones.get(i, j)) - Double.doubleToLongBits(base.correlaciones.get(i, j));
+                h += d * potencia31(total - 1 - (6L * n + (long) i * n + j));
+                h += d * potencia31(total - 1 - (6L * n + (long) j * n + i));
+            }
+            return h;
+        }
+
+        private static long[] valores(Activo a){
+            return new long[]{ a.ticker.hashCode(), a.tipo.hashCode(), a.sector.hashCode(),
+                Double.doubleToLongBits(a.retorno), Double.doubleToLongBits(a.sigma), Double.doubleToLongBits(a.montoMin) };
+        }
+
+        private static long potencia31(long e){
+            long r = 1, b = 31;
+            for (; e > 0; e >>= 1) {
+                if ((e & 1) != 0) r *= b;
+                b *= b;
+            }
+            return r;
+        }
+    }
+
     /** Busca un activo por su ticker  */
 public Activo buscarPorTicker(String ticker) {
     for (Activo a : this.activos) {
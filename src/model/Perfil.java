@@ -60,5 +60,22 @@ public final class Perfil {
 
         this.retornoMinDeseado = Math.max(retornoDeseado, this.retornoMin);
     }
+
+    private Perfil(Perfil o, double riesgoMax) {
+        this.presupuesto = o.presupuesto;
+        this.maxPorActivo = o.maxPorActivo;
+        this.maxPorTipo = o.maxPorTipo;
+        this.maxPorSector = o.maxPorSector;
+        this.tipoPerfil = o.tipoPerfil;
+        this.retornoMin = o.retornoMin;
+        this.retornoMinDeseado = o.retornoMinDeseado;
+        this.riesgoMax = riesgoMax;
+    }
+
+    /** Mismo perfil con otro riesgo máximo (por ejemplo, para barrer la frontera eficiente) */
+    public Perfil conRiesgoMax(double riesgoMax) {
+        if (!(riesgoMax > 0.0)) throw new IllegalArgumentException("riesgoMax debe ser > 0");
+        return new Perfil(this, riesgoMax);
+    }
 }
 
@@ -0,0 +1,14 @@
+package model;
+
+/**
+ * Producto punto entre tramos de dos double[]: el núcleo de la forma cuadrática del riesgo.
+ * La implementación vectorial (model.vectorial, jdk.incubator.vector) se usa si se compiló
+ * y el módulo está cargado (--add-modules jdk.incubator.vector); si no, la escalar.
+ * Con -Dtpo.vectorial=false se fuerza la escalar (para comparar).
+ */
+public interface ProductoPunto {
+
+    double punto(double[] a, int offA, double[] b, int offB, int largo);
+
+    ProductoPunto ACTUAL = ProductoPuntoEscalar.elegir();
+}
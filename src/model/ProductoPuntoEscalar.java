@@ -0,0 +1,31 @@
+package model;
+
+/** Producto punto escalar con cuatro acumuladores (cadenas de suma independientes) */
+final class ProductoPuntoEscalar implements ProductoPunto {
+
+    public double punto(double[] a, int offA, double[] b, int offB, int largo) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int t = 0;
+        for (; t + 3 < largo; t += 4) {
+            s0 += a[offA + t]     * b[offB + t];
+            s1 += a[offA + t + 1] * b[offB + t + 1];
+            s2 += a[offA + t + 2] * b[offB + t + 2];
+            s3 += a[offA + t + 3] * b[offB + t + 3];
+        }
+        for (; t < largo; t++) s0 += a[offA + t] * b[offB + t];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static ProductoPunto elegir() {
+        if (Boolean.parseBoolean(System.getProperty("tpo.vectorial", "true"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (ProductoPunto) Class.forName("model.vectorial.ProductoPuntoVectorial")
+                                            .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // no se compiló model.vectorial: queda la escalar
+            }
+        }
+        return new ProductoPuntoEscalar();
+    }
+}
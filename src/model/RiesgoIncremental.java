@@ -0,0 +1,80 @@
+package model;
+
+/**
+ * Estado incremental del riesgo de una cartera.
+ * Mantiene u = rho·(sigma∘w) y el término cuadrático v·u (con v = sigma∘w),
+ * de modo que cambiar el monto de un solo activo cuesta O(n) en lugar de O(n²).
+ * Pensado para backtracking: cada {@link #aplicar} se revierte con {@link #deshacer}.
+ */
+public final class RiesgoIncremental {
+    private final MatrizCorrelacion rho;
+    private final double[] sigma;
+    private final double presupuesto;
+    private final double[] u;   // u = rho·v
+    private double quad;        // v·u = varianza de la cartera
+
+    /** Cartera vacía */
+    public RiesgoIncremental(Mercado m, double presupuesto) {
+        int n = m.activos.size();
+        this.rho = m.correlaciones;
+        this.presupuesto = presupuesto;
+        this.sigma = new double[n];
+        for (int i = 0; i < n; i++) sigma[i] = m.activos.get(i).sigma;
+        this.u = new double[n];
+        this.quad = 0.0;
+    }
+
+    /** Parte de los montos de una asignación existente */
+    public RiesgoIncremental(Mercado m, Asignacion a, double presupuesto) {
+        this(m, presupuesto);
+        Asignacion.Soporte s = a.soporte(m);
+        for (int t = 0; t < s.k; t++) aplicar(s.indices[t], s.montos[t]);
+    }
+
+    private RiesgoIncremental(RiesgoIncremental o) {
+        this.rho = o.rho;
+        this.sigma = o.sigma;
+        this.presupuesto = o.presupuesto;
+        this.u = o.u.clone();
+        this.quad = o.quad;
+    }
+
+    /** Copia independiente del estado (para repartir subárboles entre hilos) */
+    public RiesgoIncremental copia() {
+        return new RiesgoIncremental(this);
+    }
+
+    /** Suma delta (moneda, puede ser negativo) al monto del activo i. O(n). */
+    public void aplicar(int i, double delta) {
+        double dv = sigma[i] * delta / presupuesto;
+        if (dv == 0.0) return;
+        quad += 2.0 * dv * u[i] + dv * dv * rho.get(i, i);
+        rho.sumarFila(i, dv, u);  // rho simétrica: la columna i es la fila i
+    }
+
+    /** Revierte un {@link #aplicar} previo con el mismo delta */
+    public void deshacer(int i, double delta) {
+        aplicar(i, -delta);
+    }
+
+    /** Riesgo (sigma) de la cartera actual */
+    public double riesgo() {
+        return Math.sqrt(Math.max(0.0, quad));
+    }
+
+    /** Riesgo si se sumaran deltaI al activo i y deltaJ al activo j (i != j), sin modificar el estado. O(1). */
+    public double riesgoCon(int i, double deltaI, int j, double deltaJ) {
+        double a = sigma[i] * deltaI / presupuesto;
+        double b = sigma[j] * deltaJ / presupuesto;
+        double q = quad + 2.0 * a * u[i] + a * a * rho.get(i, i)
+                        + 2.0 * b * u[j] + b * b * rho.get(j, j) + 2.0 * a * b * rho.get(i, j);
+        return Math.sqrt(Math.max(0.0, q));
+    }
+
+    /** Riesgo que tendría la cartera si se sumara delta al activo i, sin modificar el estado. O(1). */
+    public double riesgoCon(int i, double delta) {
+        double dv = sigma[i] * delta / presupuesto;
+        double q = quad + 2.0 * dv * u[i] + dv * dv * rho.get(i, i);
+        return Math.sqrt(Math.max(0.0, q));
+    }
+}
@@ -0,0 +1,27 @@
+package model.vectorial;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import model.ProductoPunto;
+
+/**
+ * Producto punto con la Vector API (incubadora). Se compila y se usa solo con
+ * --add-modules jdk.incubator.vector; ProductoPunto.ACTUAL la carga por reflexión.
+ */
+public final class ProductoPuntoVectorial implements ProductoPunto {
+    private static final VectorSpecies<Double> ESPECIE = DoubleVector.SPECIES_PREFERRED;
+
+    public double punto(double[] a, int offA, double[] b, int offB, int largo) {
+        DoubleVector acc = DoubleVector.zero(ESPECIE);
+        int t = 0, lim = ESPECIE.loopBound(largo);
+        for (; t < lim; t += ESPECIE.length()) {
+            DoubleVector va = DoubleVector.fromArray(ESPECIE, a, offA + t);
+            DoubleVector vb = DoubleVector.fromArray(ESPECIE, b, offB + t);
+            acc = va.fma(vb, acc);
+        }
+        double s = acc.reduceLanes(VectorOperators.ADD);
+        for (; t < largo; t++) s += a[offA + t] * b[offB + t];
+        return s;
+    }
+}
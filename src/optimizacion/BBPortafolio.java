@@ -2,7 +2,12 @@ package optimizacion;
 
 import model.*;
 import validacion.ValidadorAsignacion;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 public final class BBPortafolio {
 
@@ -10,181 +15,557 @@ public final class BBPortafolio {
         public final Asignacion mejor;
         public final double retorno;
         public final double riesgo;
-        public final int nodosVisitados;
-        public Resultado(Asignacion a, double r, double s, int nv){
+        public final long nodosVisitados;
+        /** Cota superior probada del retorno óptimo y gap respecto de la mejor cartera */
+        public final double cotaSuperior;
+        public final double gap;
+        /** false si la búsqueda se cortó por plazo o tope de nodos antes de cerrar el gap */
+        public final boolean optimoProbado;
+        /** Podas, perfil por profundidad y mejoras; null si no se pidieron (OpcionesBusqueda.estadisticas) */
+        public final EstadisticasBusqueda estadisticas;
+        /** Activos que el presolve sacó de la búsqueda (inviables para el perfil o dominados) */
+        public final int activosDescartados;
+        /** Perfil para el que se resolvió (null si no se sabe); reoptimizar lo exige igual */
+        public final Perfil perfil;
+        public Resultado(Asignacion a, double r, double s, long nv){
+            this(a, r, s, nv, r, true);
+        }
+        public Resultado(Asignacion a, double r, double s, long nv, double cota, boolean probado){
+            this(a, r, s, nv, cota, probado, null, 0);
+        }
+        public Resultado(Asignacion a, double r, double s, long nv, double cota, boolean probado,
+                         EstadisticasBusqueda est, int descartados){
+            this(a, r, s, nv, cota, probado, est, descartados, null);
+        }
+        Resultado(Asignacion a, double r, double s, long nv, double cota, boolean probado,
+                  EstadisticasBusqueda est, int descartados, Perfil perfil){
+            this.perfil=perfil;
             this.mejor=a; this.retorno=r; this.riesgo=s; this.nodosVisitados=nv;
+            this.cotaSuperior=Math.max(cota, r); this.gap=this.cotaSuperior-r;
+            this.optimoProbado=probado; this.estadisticas=est; this.activosDescartados=descartados;
         }
     }
 
     private BBPortafolio(){}
 
     public static Resultado maximizarRetorno(Mercado m, Perfil p){
-        final int n = m.activos.size();
-
-        // Orden de exploración por score (ret/sigma) desc
-        List<Integer> orden = new ArrayList<>();
-        for (int i=0;i<n;i++) orden.add(i);
-        orden.sort((i,j)->{
-            Activo ai = m.activos.get(i);
-            Activo aj = m.activos.get(j);
-            double si = ai.sigma>1e-12 ? ai.retorno/ai.sigma : ai.retorno;
-            double sj = aj.sigma>1e-12 ? aj.retorno/aj.sigma : aj.retorno;
-            return Double.compare(sj, si);
-        });
-
-        // Cota inferior inicial con Greedy
-        Asignacion best = heuristicas.GreedyInicial.construir(m, p);
-        double bestRet  = CalculadoraRetorno.retornoCartera(m, best, p.presupuesto);
-        double bestRisk = CalculadoraRiesgo.riesgoCartera(m, best, p.presupuesto);
+        return maximizarRetorno(m, p, OpcionesBusqueda.secuencial());
+    }
+
+    /**
+     * Búsqueda anytime: corta al vencer el plazo o al visitar maxNodos y devuelve la mejor
+     * cartera hallada, la cota superior pendiente y el gap. plazo null = sin plazo.
+     */
+    public static Resultado maximizarRetorno(Mercado m, Perfil p, Duration plazo, long maxNodos){
+        OpcionesBusqueda op = OpcionesBusqueda.secuencial();
+        op.plazo = plazo;
+        op.maxNodos = maxNodos;
+        return maximizarRetorno(m, p, op);
+    }
+
+    public static Resultado maximizarRetorno(Mercado m, Perfil p, OpcionesBusqueda op){
+        return maximizarRetorno(m, p, op, null);
+    }
+
+    /**
+     * Arranque en caliente: si arranque (una cartera válida para p) no es null, el incumbente inicial
+     * sale de mejorarla por búsqueda local en lugar de partir del Greedy.
+     */
+    static Resultado maximizarRetorno(Mercado m, Perfil p, OpcionesBusqueda op, Asignacion arranque){
+        if (op.lotesPorNivel > 0) return LotesGruesos.resolver(m, p, op, arranque);
+        return maximizarRetorno(new ProblemaCompilado(m, p, op.presolve), op, arranque);
+    }
+
+    /**
+     * Re-optimización después de un cambio chico de mercado (retornos, sigmas o montos mínimos de
+     * algunos activos), para el mismo perfil de la corrida anterior:
+     *  - incumbente inicial: la mejor, con el mercado nuevo, de las carteras que mejoraron el incumbente
+     *    antes (sus estadísticas; si no se pidieron, la final), reparadas si dejaron de ser válidas
+     *    (BusquedaLocal.reparar), y de la heurística con la que arranca una corrida en frío, mejorada por
+     *    búsqueda local;
+     *  - en cada nivel se prueba primero el monto que el activo tenía en el óptimo anterior;
+     *  - si la corrida anterior probó su óptimo para este mismo perfil y m es una versión comparable de
+     *    mercadoAnterior (Mercado.activosCambiadosDesde, p. ej. armada con Mercado.Delta), las carteras sin
+     *    activos cambiados no se vuelven a explorar: tienen el retorno y el riesgo de antes, ya acotados por esa prueba.
+     * mercadoAnterior puede ser null (solo arranque en caliente). El árbol visitado y las podas son los de
+     * la corrida en frío, así que el retorno no queda por debajo del de maximizarRetorno(m, p, op)
+     * (ver tools.VerificarReoptimizacion). Con op.lotesPorNivel > 0 resuelve con LotesGruesos desde el
+     * mismo arranque, sin reutilizar la prueba.
+     * @throws IllegalArgumentException si anterior se resolvió para otro perfil
+     */
+    public static Resultado reoptimizar(Mercado m, Perfil p, Resultado anterior, Mercado mercadoAnterior,
+                                       OpcionesBusqueda op){
+        Objects.requireNonNull(anterior);
+        if (anterior.perfil != null && !mismoPerfil(anterior.perfil, p))
+            throw new IllegalArgumentException("La corrida anterior se resolvió para otro perfil");
+        boolean reusarPrueba = mercadoAnterior != null && anterior.optimoProbado && anterior.mejor != null
+                && anterior.perfil != null && op.lotesPorNivel <= 0;
+        boolean[] cambiado = reusarPrueba ? m.activosCambiadosDesde(mercadoAnterior) : null;
+        boolean x0Intacto = cambiado != null && !contieneCambios(m, anterior.mejor, cambiado);
+
+        List<Asignacion> previas = new ArrayList<>();
+        if (anterior.mejor != null) previas.add(anterior.mejor);
+        if (anterior.estadisticas != null) {
+            List<EstadisticasBusqueda.Mejora> mj = anterior.estadisticas.mejoras;
+            for (int i = mj.size() - 1; i >= 0; i--) if (mj.get(i).asignacion != null) previas.add(mj.get(i).asignacion);
+        }
+        Asignacion arranque = null;
+        double retArranque = Double.NEGATIVE_INFINITY;
+        for (Asignacion a : previas) {
+            // el óptimo anterior sin activos cambiados sigue valiendo tal cual (y la poda de abajo lo necesita)
+            Asignacion r = a == anterior.mejor && x0Intacto ? a : heuristicas.BusquedaLocal.reparar(m, p, a);
+            if (r == null) continue;
+            double ret = CalculadoraRetorno.retornoCartera(m, r, p.presupuesto);
+            if (ret > retArranque) { arranque = r; retArranque = ret; }
+        }
+        // la poda por riesgo es tentativa (con correlaciones negativas el riesgo puede bajar al sumar activos):
+        // la heurística de la corrida en frío puede dar una cartera que el árbol no visita, así que también compite
+        Asignacion frio = heuristicas.BusquedaLocal.construir(m, p, op.hilos, op.busquedaLocal);
+        if (esValida(m, p, frio) && CalculadoraRetorno.retornoCartera(m, frio, p.presupuesto) > retArranque) arranque = frio;
+        if (op.lotesPorNivel > 0) return LotesGruesos.resolver(m, p, op, arranque);
+
+        double[] preferidos = null;
+        if (anterior.mejor != null) {
+            preferidos = new double[m.activos.size()];
+            Asignacion.Soporte s = anterior.mejor.soporte(m);
+            for (int t = 0; t < s.k; t++) preferidos[s.indices[t]] = s.montos[t];
+        }
+        // con el óptimo anterior intacto como incumbente, ninguna cartera sin cambios lo supera (ni empata mejor)
+        double techo = cambiado == null ? Double.POSITIVE_INFINITY
+                     : x0Intacto ? Double.NEGATIVE_INFINITY : anterior.retorno;
+        ProblemaCompilado pc = new ProblemaCompilado(m, p, op.presolve, preferidos, cambiado, techo);
+        return maximizarRetorno(pc, op, arranque);
+    }
+
+    // mismo perfil a efectos de la búsqueda: la forma canónica de CacheSoluciones
+    static boolean mismoPerfil(Perfil a, Perfil b){
+        return a == b || CacheSoluciones.clave(a).equals(CacheSoluciones.clave(b));
+    }
+
+    private static boolean esValida(Mercado m, Perfil p, Asignacion a){
+        try {
+            ValidadorAsignacion.validar(m, p, a);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private static boolean contieneCambios(Mercado m, Asignacion a, boolean[] cambiado){
+        Asignacion.Soporte s = a.soporte(m);
+        for (int t = 0; t < s.k; t++) if (cambiado[s.indices[t]]) return true;
+        return false;
+    }
+
+    static Resultado maximizarRetorno(ProblemaCompilado pc, OpcionesBusqueda op, Asignacion arranque){
+        Mercado m = pc.m;
+        Perfil p = pc.p;
+        Limites lim = Limites.de(op);
+        EstadisticasBusqueda.Registro reg = op.estadisticas || op.observador != null
+                ? new EstadisticasBusqueda.Registro(pc.n, op.estadisticas, op.observador) : null;
+        TablaTransposicion.PorHilo tablas = op.tablaTransposicion > 0
+                ? new TablaTransposicion.PorHilo(op.tablaTransposicion, pc) : null;
+
+        // Cota inferior inicial: Greedy (o el arranque) mejorado por búsqueda local; compartida por todos los hilos
+        Asignacion inicial = arranque != null
+                ? heuristicas.BusquedaLocal.mejorar(m, p, arranque)
+                : heuristicas.BusquedaLocal.construir(m, p, op.hilos, op.busquedaLocal);
+        AtomicReference<Incumbente> best = new AtomicReference<>(new Incumbente(inicial,
+                CalculadoraRetorno.retornoCartera(m, inicial, p.presupuesto),
+                CalculadoraRiesgo.riesgoCartera(m, inicial, p.presupuesto),
+                correlacionMedia(m, inicial)));
+        if (reg != null) reg.mejora(best.get().retorno, inicial);
 
         // Estado mutable para backtracking
-        LinkedHashMap<String,Double> asig = new LinkedHashMap<>();
-        Map<String,Double> usoTipo   = new HashMap<>();
-        Map<String,Double> usoSector = new HashMap<>();
+        EstadoBusqueda e = new EstadoBusqueda(pc);
+        double cotaRaiz = boundOptimista(pc, e, 0);
 
-        int[] nodos = new int[]{0};
-        backtrack(0, m, p, orden, asig, p.presupuesto, usoTipo, usoSector,
-                  new double[]{bestRet}, new Asignacion[]{best}, new double[]{bestRisk}, nodos);
+        long nodos;
+        if (op.modo == OpcionesBusqueda.Modo.MEJOR_PRIMERO) {
+            nodos = BusquedaMejorPrimero.ejecutar(pc, best, lim, op, reg, tablas);
+        } else if (op.hilos <= 1) {
+            ContextoBusqueda c = new ContextoBusqueda(pc, best, lim, reg, tablas);
+            backtrack(0, e, c);
+            c.cerrar();
+            nodos = c.nodos;
+        } else {
+            LongAdder total = new LongAdder();
+            ForkJoinPool pool = new ForkJoinPool(op.hilos);
+            try {
+                pool.invoke(new Subarbol(0, e, pc, best, lim, reg, tablas, op.profundidadParalela, total));
+            } finally {
+                pool.shutdown();
+            }
+            nodos = total.sum();
+        }
 
-        return new Resultado(best, bestRet, bestRisk, nodos[0]);
+        // Búsqueda completa: el incumbente es óptimo y el gap es 0.
+        // Si se cortó, la cota es la mayor entre los subárboles que quedaron pendientes.
+        Incumbente b = best.get();
+        boolean probado = !lim.detenido();
+        double cota = b.retorno;
+        if (!probado) {
+            double pend = lim.cotaPendiente();
+            cota = Math.max(b.retorno, pend == Double.NEGATIVE_INFINITY ? cotaRaiz : pend);
+        }
+        long[] usoTabla = tablas != null ? tablas.cerrar() : new long[3];
+        EstadisticasBusqueda est = op.estadisticas ? reg.cerrar(pc, usoTabla) : null;
+        if (op.observador != null) {
+            op.observador.gap(b.retorno, cota);
+            if (est != null) op.observador.estadisticas(est);
+        }
+        return new Resultado(b.asignacion, b.retorno, b.riesgo, nodos, cota, probado, est, pc.descartados(), p);
     }
 
-    private static void backtrack(int k, Mercado m, Perfil p, List<Integer> ord,
-                                  LinkedHashMap<String,Double> asig, double presupuestoRest,
-                                  Map<String,Double> usoTipo, Map<String,Double> usoSector,
-                                  double[] bestRet, Asignacion[] best, double[] bestRisk, int[] nodos) {
-        nodos[0]++;
+    static void backtrack(int k, EstadoBusqueda e, ContextoBusqueda c) {
+        ProblemaCompilado pc = c.pc;
+        if (c.contarNodo(k)) {
+            // el corte llegó antes de explorar este nodo: queda en la frontera con su cota
+            c.limites.pendiente(boundOptimista(pc, e, k));
+            return;
+        }
 
         // Hoja o sin presupuesto útil
-        if (k == ord.size() || presupuestoRest < 1e-6) {
-            evaluarYActualizar(m, p, asig, bestRet, best, bestRisk);
+        if (k == pc.niveles || e.presupuestoRest < 1e-6) {
+            evaluarYActualizar(c, e);
             return;
         }
 
-        // Poda por cota superior (bound optimista)
-        double ub = boundOptimista(m, p, ord, k, asig, usoTipo, usoSector, presupuestoRest);
-        if (ub <= bestRet[0] + 1e-12) return;
+        // Poda por cota superior (bound optimista) contra el incumbente y el retorno mínimo.
+        // Los empates se exploran para que el desempate por correlación no dependa del orden de visita.
+        double ub = boundOptimista(pc, e, k);
+        if (podada(pc, ub, c.best)) {
+            if (c.est != null) c.est.podasCota++;
+            return;
+        }
+
+        // Estado equivalente ya resuelto: su cota de completación vale también para este
+        TablaTransposicion tt = c.tabla;
+        if (tt != null) {
+            double completa = tt.buscar(k, e);
+            if (completa == completa && podada(pc, e.retParcial + completa + TablaTransposicion.MARGEN, c.best)) {
+                tt.podas++;
+                return;
+            }
+        }
+        long nodos0 = c.nodos;
+        long rechazos0 = c.rechazosRiesgo;
+        double hoja0 = c.mejorHoja;
+        c.mejorHoja = Double.NEGATIVE_INFINITY;
 
         // Nodo actual
-        Activo act = m.activos.get(ord.get(k));
-        double topeActivoAbs = p.maxPorActivo * p.presupuesto;
-        double unit = act.montoMin;
+        int idx = pc.orden[k];
+        double unit = pc.montoMin[idx];
 
         // qmax según presupuesto y tope por activo
-        int qmax = (int)Math.floor(Math.min(presupuestoRest, topeActivoAbs) / unit);
+        int qmax = (int)Math.floor(Math.min(e.presupuestoRest, pc.topeActivo) / unit);
 
-        // Exploramos q = qmax..0 (primero más monto ⇒ mejor cota inferior temprano)
-        for (int q = qmax; q >= 0; q--) {
+        // Exploramos q = qmax..0 (primero más monto ⇒ mejor cota inferior temprano), salvo arranque en caliente
+        // o lotes gruesos (ver ProblemaCompilado.rama)
+        for (int j = 0, ramas = pc.ramas(k, qmax); j < ramas; j++) {
+            int q = pc.rama(k, qmax, j);
             double delta = q * unit;  // monto a sumar para este activo
 
             if (delta < 1e-9) {
                 // Rama q=0: NO TOMAR este activo
-                backtrack(k+1, m, p, ord, asig, presupuestoRest, usoTipo, usoSector, bestRet, best, bestRisk, nodos);
-                continue;
+                backtrack(k+1, e, c);
+            } else if (admisible(pc, e, idx, delta, c)) {
+                e.aplicar(idx, delta);
+                backtrack(k+1, e, c);
+                e.deshacer(idx, delta);
             }
 
-            // Chequeo de límites por tipo/sector con delta
-            double nuevoTipo   = usoTipo.getOrDefault(act.tipo, 0.0) + delta;
-            double nuevoSector = usoSector.getOrDefault(act.sector, 0.0) + delta;
-            double limTipo     = p.maxPorTipo.getOrDefault(act.tipo, 1.0)*p.presupuesto;
-            double limSector   = p.maxPorSector.getOrDefault(act.sector,1.0)*p.presupuesto;
-            if (nuevoTipo > limTipo + 1e-9 || nuevoSector > limSector + 1e-9) continue;
-
-            // Aplicar delta
-            asig.put(act.ticker, asig.getOrDefault(act.ticker, 0.0) + delta);
-            usoTipo.put(act.tipo, nuevoTipo);
-            usoSector.put(act.sector, nuevoSector);
-
-            // Poda por riesgo (tentativa)
-            Asignacion parcial = new Asignacion(asig);
-            double risk = CalculadoraRiesgo.riesgoCartera(m, parcial, p.presupuesto);
-            if (risk <= p.riesgoMax + 1e-9) {
-                backtrack(k+1, m, p, ord, asig, presupuestoRest - delta,
-                          usoTipo, usoSector, bestRet, best, bestRisk, nodos);
+            // Corte por plazo/tope: el hijo en curso ya dejó su frontera; quedan pendientes los hermanos sin visitar
+            if (c.limites.detenido()) {
+                c.limites.pendiente(cotaHermanos(k, qmax, j + 1, e, c));
+                c.mejorHoja = Math.max(hoja0, c.mejorHoja);
+                return;
             }
+        }
 
-            // Deshacer
-            double prev = asig.get(act.ticker) - delta;
-            if (prev <= 1e-12) asig.remove(act.ticker); else asig.put(act.ticker, prev);
-            usoTipo.put(act.tipo, nuevoTipo - delta);
-            usoSector.put(act.sector, nuevoSector - delta);
+        // Subárbol completo y sin rechazos por riesgo: lo que probó vale para cualquier estado con la misma clave
+        if (tt != null && c.rechazosRiesgo == rechazos0) {
+            double techo = Math.max(Math.max(c.mejorHoja, c.best.get().retorno), pc.retornoRequerido);
+            tt.guardar(k, techo - e.retParcial, c.nodos - nodos0);
         }
+        c.mejorHoja = Math.max(hoja0, c.mejorHoja);
     }
 
-    // Cota superior: retorno parcial + fraccional optimista con presupuesto y límites (sin riesgo, rápido)
-    private static double boundOptimista(Mercado m, Perfil p, List<Integer> ord, int k,
-                                         Map<String,Double> asig,
-                                         Map<String,Double> usoTipo, Map<String,Double> usoSector,
-                                         double presupuestoRest) {
-        double retParcial = 0.0;
-        for (Map.Entry<String,Double> e : asig.entrySet()) {
-            int idx = m.indexOf(e.getKey());
-            double w = e.getValue() / p.presupuesto;
-            retParcial += w * m.activos.get(idx).retorno;
+    // Mayor cota entre los hijos desde la rama j del nodo de profundidad k (los que el corte dejó sin visitar)
+    private static double cotaHermanos(int k, int qmax, int desde, EstadoBusqueda e, ContextoBusqueda c) {
+        ProblemaCompilado pc = c.pc;
+        int idx = pc.orden[k];
+        double unit = pc.montoMin[idx];
+        double cota = Double.NEGATIVE_INFINITY;
+        for (int j = desde, ramas = pc.ramas(k, qmax); j < ramas; j++) {
+            double delta = pc.rama(k, qmax, j) * unit;
+            if (delta < 1e-9) {
+                cota = Math.max(cota, boundOptimista(pc, e, k+1));
+            } else if (admisible(pc, e, idx, delta, c)) {
+                e.aplicar(idx, delta);
+                cota = Math.max(cota, boundOptimista(pc, e, k+1));
+                e.deshacer(idx, delta);
+            }
         }
+        return cota;
+    }
 
-        double retExtra = 0.0;
-        double resto = presupuestoRest;
+    /**
+     * Subárbol como tarea ForkJoin: por encima de la profundidad de corte cada hijo
+     * es una tarea con su propia copia del estado; por debajo, backtrack secuencial.
+     * Todas las tareas podan contra el mismo incumbente atómico.
+     */
+    private static final class Subarbol extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        for (int i=k;i<ord.size() && resto>1e-9;i++){
-            Activo a = m.activos.get(ord.get(i));
-            double limTipoRest   = p.maxPorTipo.getOrDefault(a.tipo, 1.0)*p.presupuesto - usoTipo.getOrDefault(a.tipo, 0.0);
-            double limSectorRest = p.maxPorSector.getOrDefault(a.sector,1.0)*p.presupuesto - usoSector.getOrDefault(a.sector,0.0);
-            double topeActivo    = p.maxPorActivo * p.presupuesto;
+        private final int k;
+        private final EstadoBusqueda e;
+        private final ProblemaCompilado pc;
+        private final AtomicReference<Incumbente> best;
+        private final Limites lim;
+        private final EstadisticasBusqueda.Registro reg;
+        private final TablaTransposicion.PorHilo tablas;
+        private final int corte;
+        private final LongAdder nodos;
 
-            double cap = Math.max(0.0, Math.min(Math.min(resto, topeActivo), Math.min(limTipoRest, limSectorRest)));
-            if (cap <= 1e-12) continue;
+        Subarbol(int k, EstadoBusqueda e, ProblemaCompilado pc, AtomicReference<Incumbente> best,
+                 Limites lim, EstadisticasBusqueda.Registro reg, TablaTransposicion.PorHilo tablas,
+                 int corte, LongAdder nodos) {
+            this.k = k; this.e = e; this.pc = pc; this.best = best;
+            this.lim = lim; this.reg = reg; this.tablas = tablas; this.corte = corte; this.nodos = nodos;
+        }
 
-            double w = cap / p.presupuesto; // fraccional optimista
-            retExtra += w * a.retorno;
-            resto -= cap;
+        @Override
+        protected void compute() {
+            // arriba del corte no hay tabla: cada tarea visita un solo nodo
+            ContextoBusqueda c = new ContextoBusqueda(pc, best, lim, reg, k >= corte ? tablas : null);
+            if (k >= corte) backtrack(k, e, c);
+            else expandir(c);
+            // lo que no completó un bloque de lim.intervalo también cuenta para maxNodos
+            c.cerrar();
+            nodos.add(c.nodos);
         }
-        return retParcial + retExtra;
-    }
 
-    private static void evaluarYActualizar(Mercado m, Perfil p,
-                                           Map<String,Double> asig,
-                                           double[] bestRet, Asignacion[] best, double[] bestRisk){
-        Asignacion a = new Asignacion(asig);
-        try {
-            ValidadorAsignacion.validar(m, p, a);
-            double r = CalculadoraRetorno.retornoCartera(m, a, p.presupuesto);
-
-            boolean mejor = false;
-            if (r > bestRet[0] + 1e-12) {
-                mejor = true;
-            } else if (Math.abs(r - bestRet[0]) <= 1e-12) {
-                // Empate en retorno: desempatar por menor correlación media
-                double corrA = correlacionMedia(m, a);
-                double corrBest = (best[0] == null) ? Double.POSITIVE_INFINITY : correlacionMedia(m, best[0]);
-                if (corrA < corrBest - 1e-12) mejor = true;
+        // Nodo por encima del corte: cada hijo admisible es una tarea; cada una deja su frontera si se corta
+        private void expandir(ContextoBusqueda c) {
+            if (c.contarNodo(k)) {
+                lim.pendiente(boundOptimista(pc, e, k));
+                return;
+            }
+
+            if (k == pc.niveles || e.presupuestoRest < 1e-6) {
+                evaluarYActualizar(c, e);
+                return;
             }
+            double ub = boundOptimista(pc, e, k);
+            if (podada(pc, ub, best)) {
+                if (c.est != null) c.est.podasCota++;
+                return;
+            }
+
+            int idx = pc.orden[k];
+            double unit = pc.montoMin[idx];
+            int qmax = (int)Math.floor(Math.min(e.presupuestoRest, pc.topeActivo) / unit);
 
-            if (mejor) {
-                bestRet[0]  = r;
-                best[0]     = a;
-                bestRisk[0] = CalculadoraRiesgo.riesgoCartera(m, a, p.presupuesto);
+            int ramas = pc.ramas(k, qmax);
+            List<Subarbol> hijos = new ArrayList<>(ramas);
+            for (int j = 0; j < ramas; j++) {
+                int q = pc.rama(k, qmax, j);
+                double delta = q * unit;
+                EstadoBusqueda hijo;
+                if (delta < 1e-9) {
+                    hijo = e.copia();
+                } else {
+                    if (!admisible(pc, e, idx, delta, c)) continue;
+                    hijo = e.copia();
+                    hijo.aplicar(idx, delta);
+                }
+                hijos.add(new Subarbol(k+1, hijo, pc, best, lim, reg, tablas, corte, nodos));
             }
+            invokeAll(hijos);
+        }
+    }
+
+    /** Margen de la poda tentativa por riesgo sobre p.riesgoMax (el validador de la hoja usa 1e-9) */
+    static final double HOLGURA_RIESGO = 1e-7;
+
+    // Una cota por debajo del incumbente o del retorno mínimo no puede dar una cartera mejor y válida
+    static boolean podada(ProblemaCompilado pc, double ub, AtomicReference<Incumbente> best) {
+        return ub < best.get().retorno - 1e-12 || ub + 1e-12 < pc.retornoRequerido;
+    }
+
+    // Máximo 6 activos, límites por tipo/sector y poda por riesgo (tentativa, O(1) sobre el estado incremental).
+    // El estado incremental acumula redondeo según el camino: la poda deja HOLGURA_RIESGO de margen y el
+    // corte exacto lo decide el validador en la hoja, así el resultado no depende del orden de visita.
+    // c.est (puede ser null) cuenta el motivo del rechazo.
+    static boolean admisible(ProblemaCompilado pc, EstadoBusqueda e, int idx, double delta, ContextoBusqueda c) {
+        EstadisticasBusqueda.Contadores est = c.est;
+        if (e.montos[idx] <= 0.0 && e.distintos >= 6) {
+            if (est != null) est.podasCantidad++;
+            return false;
+        }
+        int t = pc.tipo[idx], s = pc.sector[idx];
+        if (e.usoTipo[t] + delta > pc.limTipo[t] + 1e-9
+            || e.usoSector[s] + delta > pc.limSector[s] + 1e-9) {
+            if (est != null) est.podasTipoSector++;
+            return false;
+        }
+        if (e.riesgo.riesgoCon(idx, delta) > pc.p.riesgoMax + HOLGURA_RIESGO) {
+            c.rechazosRiesgo++;
+            if (est != null) est.podasRiesgo++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cota superior del retorno alcanzable desde el nodo (sin riesgo, rápida).
+     * Tiene en cuenta los lugares libres de los 6 activos posibles: el extra es el mínimo entre
+     * (a) llenar fraccionalmente, por retorno desc, un capital acotado por la suma de las
+     * capacidades más grandes que entran en esos lugares y (b) la suma de los mejores
+     * aportes individuales. Devuelve -inf si ya no se puede llegar a 3 activos.
+     *
+     * En una re-optimización, mientras el camino no tomó ningún activo cambiado, la completación o
+     * sigue sin cambios (acotada por la prueba anterior, pc.techoSinCambios) o usa uno de los lugares
+     * en un activo cambiado que queda: en (b) el mejor aporte de esos más los lugares-1 mejores.
+     */
+    static double boundOptimista(ProblemaCompilado pc, EstadoBusqueda e, int k) {
+        boolean prueba = pc.sinCambiosTomados(e);
+        int lugares = 6 - e.distintos;
+        if (lugares <= 0) return prueba ? Math.min(e.retParcial, pc.techoSinCambios) : e.retParcial;
+
+        double[] topCap = e.topCap, topVal = e.topVal;
+        Arrays.fill(topCap, 0, lugares, 0.0);
+        Arrays.fill(topVal, 0, lugares, 0.0);
+        int candidatos = 0;
+        for (int i=k;i<pc.niveles;i++){
+            int a = pc.orden[i];
+            double cap = capacidad(pc, e, a);
+            if (cap <= 0.0) continue;
+            candidatos++;
+            insertarTop(topCap, lugares, cap);
+            insertarTop(topVal, lugares, cap / pc.presupuesto * pc.retorno[a]);
+        }
+        if (e.distintos + candidatos < 3) return Double.NEGATIVE_INFINITY;
+
+        double capTotal = 0.0, sumaTop = 0.0;
+        for (int j=0;j<lugares;j++){ capTotal += topCap[j]; sumaTop += topVal[j]; }
+
+        // (a) fraccional por retorno desc
+        double resto = Math.min(e.presupuestoRest, capTotal);
+        double fracc = 0.0;
+        for (int j=0;j<pc.niveles && resto>1e-9;j++){
+            int a = pc.ordenRetorno[j];
+            if (pc.retorno[a] <= 0.0) break;
+            if (pc.posicion[a] < k) continue;
+            double cap = capacidad(pc, e, a);
+            if (cap <= 0.0) continue;
+            double x = Math.min(cap, resto);
+            fracc += x / pc.presupuesto * pc.retorno[a];
+            resto -= x;
+        }
+        double cota = e.retParcial + Math.min(fracc, sumaTop);
+        if (!prueba) return cota;
+
+        double sinCambios = Math.min(cota, pc.techoSinCambios);
+        double mejorCambio = Double.NEGATIVE_INFINITY;
+        for (int a : pc.cambiados) {
+            if (pc.posicion[a] < k) continue;
+            double cap = capacidad(pc, e, a);
+            if (cap > 0.0) mejorCambio = Math.max(mejorCambio, cap / pc.presupuesto * pc.retorno[a]);
+        }
+        if (mejorCambio == Double.NEGATIVE_INFINITY) return sinCambios;
+        double otros = 0.0;
+        for (int j=0;j<lugares-1;j++) otros += topVal[j];
+        double conCambio = e.retParcial + Math.min(fracc, mejorCambio + otros);
+        return Math.max(sinCambios, Math.min(cota, conCambio));
+    }
+
+    // Monto máximo que todavía podría recibir el activo a (múltiplo de montoMin)
+    private static double capacidad(ProblemaCompilado pc, EstadoBusqueda e, int a) {
+        double limTipoRest   = pc.limTipo[pc.tipo[a]] - e.usoTipo[pc.tipo[a]];
+        double limSectorRest = pc.limSector[pc.sector[a]] - e.usoSector[pc.sector[a]];
+        double cap = Math.min(Math.min(e.presupuestoRest, pc.topeActivo), Math.min(limTipoRest, limSectorRest));
+        if (cap + 1e-9 < pc.montoMin[a]) return 0.0;
+        return Math.floor((cap + 1e-9) / pc.montoMin[a]) * pc.montoMin[a];
+    }
+
+    // Inserta v en top[0..s) (orden desc), descartando el menor
+    private static void insertarTop(double[] top, int s, double v) {
+        if (v <= top[s-1]) return;
+        int j = s-1;
+        while (j > 0 && top[j-1] < v) { top[j] = top[j-1]; j--; }
+        top[j] = v;
+    }
+
+    // Hoja: por construcción ya se respetan presupuesto, montoMin, topes y riesgo;
+    // faltan cantidad de activos y retorno mínimo. Solo se arma la Asignacion si mejora.
+    static void evaluarYActualizar(ContextoBusqueda c, EstadoBusqueda e){
+        ProblemaCompilado pc = c.pc;
+        AtomicReference<Incumbente> best = c.best;
+        if (c.est != null) c.est.hojas++;
+        if (e.distintos < 3 || e.distintos > 6) {
+            if (c.est != null) c.est.hojasInfactibles++;
+            return;
+        }
+        double r = e.retornoExacto();
+        if (r > c.mejorHoja) c.mejorHoja = r;
+        if (r + 1e-12 < pc.retornoRequerido) {
+            if (c.est != null) c.est.hojasInfactibles++;
+            return;
+        }
+        if (r < best.get().retorno - 1e-12) return;
+
+        double corr = correlacionMedia(pc.m, e.montos);
+        if (!new Incumbente(null, r, 0.0, corr).superaA(best.get())) return;
+
+        Asignacion a = pc.aAsignacion(e.montos);
+        try {
+            ValidadorAsignacion.validar(pc.m, pc.p, a);
         } catch (IllegalArgumentException ignore) {
-            // nodo no factible
+            c.rechazosRiesgo++;  // el validador mira el riesgo final
+            if (c.est != null) c.est.hojasInfactibles++;
+            return; // nodo no factible
+        }
+        Incumbente cand = new Incumbente(a, r, CalculadoraRiesgo.riesgoCartera(pc.m, a, pc.presupuesto), corr);
+
+        // Publicación sin locks: solo reemplaza si sigue siendo mejor que el actual
+        while (true) {
+            Incumbente actual = best.get();
+            if (!cand.superaA(actual)) return;
+            if (best.compareAndSet(actual, cand)) {
+                if (c.registro != null) c.registro.mejora(r, a);
+                return;
+            }
         }
     }
 
     // --- helper local: correlación media de la cartera (solo pares seleccionados) ---
-    private static double correlacionMedia(Mercado m, Asignacion a){
-        List<Integer> idx = new ArrayList<>();
-        for (String t : a.getMontos().keySet()){
-            if (a.getMonto(t) > 0.0) idx.add(m.indexOf(t));
+    static double correlacionMedia(Mercado m, double[] montos){
+        int[] idx = new int[montos.length];
+        int k = 0;
+        for (int i=0;i<montos.length;i++) if (montos[i] > 0.0) idx[k++] = i;
+        if (k < 2) return 0.0;
+        double sum=0.0; int cnt=0;
+        for (int i=0;i<k;i++){
+            for (int j=i+1;j<k;j++){
+                sum += m.rho(idx[i], idx[j]);
+                cnt++;
+            }
         }
-        if (idx.size() < 2) return 0.0;
+        return cnt==0?0.0:sum/cnt;
+    }
+
+    static double correlacionMedia(Mercado m, Asignacion a){
+        Asignacion.Soporte s = a.soporte(m);
+        if (s.k < 2) return 0.0;
         double sum=0.0; int cnt=0;
-        for (int i=0;i<idx.size();i++){
-            for (int j=i+1;j<idx.size();j++){
-                sum += m.rho[idx.get(i)][idx.get(j)];
+        for (int i=0;i<s.k;i++){
+            for (int j=i+1;j<s.k;j++){
+                sum += m.rho(s.indices[i], s.indices[j]);
                 cnt++;
             }
         }
         return cnt==0?0.0:sum/cnt;
     }
 }
-
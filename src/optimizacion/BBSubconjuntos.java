@@ -0,0 +1,577 @@
+package optimizacion;
+
+import model.*;
+import validacion.ValidadorAsignacion;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Motor exacto alternativo en dos niveles: una cartera válida tiene de 3 a 6 activos, así que primero se
+ * elige el subconjunto y después cómo repartir los lotes dentro de él.
+ *  - Subconjuntos: se arman recorriendo los activos por retorno desc. Un subárbol se poda si ni dando a
+ *    sus activos el montoMin y llenando el resto del presupuesto con ellos y con los mejores que quedan
+ *    (fraccional, sin riesgo) supera al incumbente; un subconjunto se descarta si su techo no lo supera o
+ *    si su piso de riesgo excede riesgoMax. Los que quedan se resuelven en orden de techo desc.
+ *  - Reparto: cada subconjunto es un B&B chico (k <= 6 niveles) sobre los lotes, con la misma cota
+ *    fraccional, una cota elíptica (el mejor retorno de lo que falta decidir sin pasar riesgoMax, sin
+ *    cajas) y el piso de riesgo de lo que falta; el riesgo se exige a la cartera final.
+ *  - Primero se baja por un solo camino en cada subconjunto (sondeo) para tener buen incumbente; después
+ *    se reparten entre op.hilos hilos con el incumbente compartido, y cuando el techo del siguiente ya no
+ *    lo alcanza se termina.
+ * Piso de riesgo: cada covarianza positiva con los pesos mínimos (montoMin) y cada negativa con los
+ * máximos (tope), así acota por debajo a cualquier reparto aunque haya correlaciones negativas.
+ * Desempata como BBPortafolio (menor correlación media). Como el riesgo se mira en la cartera final y no
+ * en cada prefijo, no depende del orden de los activos. Usa presolve, plazo, maxNodos, hilos,
+ * busquedaLocal, estadisticas y observador de OpcionesBusqueda; el resto no aplica.
+ */
+public final class BBSubconjuntos {
+    private BBSubconjuntos(){}
+
+    public static BBPortafolio.Resultado maximizarRetorno(Mercado m, Perfil p){
+        return maximizarRetorno(m, p, OpcionesBusqueda.secuencial());
+    }
+
+    public static BBPortafolio.Resultado maximizarRetorno(Mercado m, Perfil p, OpcionesBusqueda op){
+        ProblemaCompilado pc = new ProblemaCompilado(m, p, op.presolve);
+        Limites lim = Limites.de(op);
+        EstadisticasBusqueda.Registro reg = op.estadisticas || op.observador != null
+                ? new EstadisticasBusqueda.Registro(pc.n, op.estadisticas, op.observador) : null;
+
+        Asignacion inicial = heuristicas.BusquedaLocal.construir(m, p, op.hilos, op.busquedaLocal);
+        AtomicReference<Incumbente> best = new AtomicReference<>(new Incumbente(inicial,
+                CalculadoraRetorno.retornoCartera(m, inicial, p.presupuesto),
+                CalculadoraRiesgo.riesgoCartera(m, inicial, p.presupuesto),
+                BBPortafolio.correlacionMedia(m, inicial)));
+        if (reg != null) reg.mejora(best.get().retorno, inicial);
+
+        Candidatos cand = new Candidatos(pc);
+        ContextoBusqueda c = new ContextoBusqueda(pc, best, lim, reg, null);
+        List<Subconjunto> lista = new ArrayList<>();
+        double cotaRaiz = cand.enumerar(c, lista);
+        lista.sort((a, b) -> Double.compare(b.techo, a.techo));
+        // sondeo: un camino por subconjunto, para tener buen incumbente antes de la búsqueda completa
+        Reparto sonda = new Reparto(pc);
+        for (Subconjunto s : lista) {
+            if (BBPortafolio.podada(pc, s.techo, best) || lim.detenido()) break;
+            sonda.resolver(cand, s, c, true);
+        }
+        c.cerrar();
+        LongAdder nodos = new LongAdder();
+        nodos.add(c.nodos);
+        if (!lim.detenido()) repartir(pc, cand, lista, best, lim, reg, Math.max(1, op.hilos), nodos);
+
+        Incumbente b = best.get();
+        boolean probado = !lim.detenido();
+        double cota = b.retorno;
+        if (!probado) {
+            double pend = lim.cotaPendiente();
+            cota = Math.max(b.retorno, pend == Double.NEGATIVE_INFINITY ? cotaRaiz : pend);
+        }
+        EstadisticasBusqueda est = op.estadisticas ? reg.cerrar(pc, new long[3]) : null;
+        if (op.observador != null) {
+            op.observador.gap(b.retorno, cota);
+            if (est != null) op.observador.estadisticas(est);
+        }
+        return new BBPortafolio.Resultado(b.asignacion, b.retorno, b.riesgo, nodos.sum(), cota, probado,
+                                          est, pc.descartados(), p);
+    }
+
+    // Resuelve los subconjuntos en orden de techo, en hilos hilos; el primero cuyo techo no alcanza corta a todos
+    private static void repartir(ProblemaCompilado pc, Candidatos cand, List<Subconjunto> lista,
+                                 AtomicReference<Incumbente> best, Limites lim,
+                                 EstadisticasBusqueda.Registro reg, int hilos, LongAdder nodos){
+        AtomicInteger siguiente = new AtomicInteger();
+        Runnable trabajo = () -> {
+            ContextoBusqueda c = new ContextoBusqueda(pc, best, lim, reg, null);
+            Reparto r = new Reparto(pc);
+            try {
+                for (int i; (i = siguiente.getAndIncrement()) < lista.size(); ) {
+                    Subconjunto s = lista.get(i);
+                    if (BBPortafolio.podada(pc, s.techo, best)) break;  // los que siguen tienen techo menor
+                    if (lim.detenido()) {
+                        lim.pendiente(s.techo);
+                        break;
+                    }
+                    r.resolver(cand, s, c, false);
+                    if (lim.detenido()) lim.pendiente(s.techo);
+                }
+            } finally {
+                c.cerrar();
+                nodos.add(c.nodos);
+            }
+        };
+        if (hilos <= 1 || lista.size() <= 1) {
+            trabajo.run();
+            return;
+        }
+        ExecutorService ex = Executors.newFixedThreadPool(hilos);
+        try {
+            List<Future<?>> fs = new ArrayList<>();
+            for (int h = 0; h < hilos; h++) fs.add(ex.submit(trabajo));
+            for (Future<?> f : fs) f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Búsqueda interrumpida", ie);
+        } catch (ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            throw new IllegalStateException(t);
+        } finally {
+            ex.shutdownNow();
+        }
+    }
+
+    /** Subconjunto que sobrevivió a la enumeración: posiciones en Candidatos (retorno desc) y su techo */
+    private static final class Subconjunto {
+        final int[] pos;
+        final double techo;
+
+        Subconjunto(int[] pos, double techo){ this.pos = pos; this.techo = techo; }
+    }
+
+    /**
+     * Activos que pueden entrar en una cartera (los que dejó el presolve y admiten un montoMin),
+     * por retorno desc, con su tope individual (presupuesto, maxPorActivo, tipo y sector).
+     */
+    private static final class Candidatos {
+        final ProblemaCompilado pc;
+        final MatrizCorrelacion cov;
+        final int n;
+        final int[] idx;
+        final double[] tope, ret;  // ret = retorno / presupuesto (por unidad de moneda)
+        /** topesMayores[t][s] = suma de los s topes más grandes entre las posiciones t..n-1 */
+        final double[][] topesMayores;
+        final double riesgoMax2;
+
+        Candidatos(ProblemaCompilado pc){
+            this.pc = pc;
+            this.cov = pc.m.covarianza();
+            double lim = Math.min(pc.presupuesto, pc.topeActivo);
+            int[] v = new int[pc.ordenRetorno.length];
+            double[] t = new double[v.length];
+            int c = 0;
+            for (int i : pc.ordenRetorno) {
+                double cap = Math.min(lim, Math.min(pc.limTipo[pc.tipo[i]], pc.limSector[pc.sector[i]]));
+                if (cap + 1e-9 < pc.montoMin[i]) continue;
+                v[c] = i;
+                t[c++] = Math.floor((cap + 1e-9) / pc.montoMin[i]) * pc.montoMin[i];
+            }
+            this.n = c;
+            this.idx = Arrays.copyOf(v, c);
+            this.tope = Arrays.copyOf(t, c);
+            this.ret = new double[c];
+            for (int k = 0; k < c; k++) ret[k] = pc.retorno[idx[k]] / pc.presupuesto;
+            this.topesMayores = new double[c + 1][7];
+            double[] top = new double[6];
+            for (int k = c - 1; k >= 0; k--) {
+                double x = tope[k];
+                for (int s = 0; s < 6; s++) if (x > top[s]) { double y = top[s]; top[s] = x; x = y; }
+                for (int s = 1; s <= 6; s++) topesMayores[k][s] = topesMayores[k][s-1] + top[s-1];
+            }
+            double r = pc.p.riesgoMax + 1e-9;
+            this.riesgoMax2 = r * r;
+        }
+
+        double montoMin(int k){ return pc.montoMin[idx[k]]; }
+
+        // término del piso de riesgo para el par (a, b) de candidatos: pesos mínimos si la covarianza es positiva, máximos si no
+        double piso(int a, int b){
+            double c = cov.get(idx[a], idx[b]);
+            return c >= 0.0 ? c * montoMin(a) * montoMin(b) : c * tope[a] * tope[b];
+        }
+
+        /**
+         * DFS de subconjuntos por posición creciente. Agrega a lista los de 3 a 6 activos que superan al
+         * incumbente y respetan el piso de riesgo; devuelve la cota de la raíz.
+         */
+        double enumerar(ContextoBusqueda c, List<Subconjunto> lista){
+            Enumeracion e = new Enumeracion(this, c, lista);
+            return e.nodo(0, -1);
+        }
+    }
+
+    /** Estado de la DFS de subconjuntos */
+    private static final class Enumeracion {
+        final Candidatos k;
+        final ContextoBusqueda c;
+        final List<Subconjunto> lista;
+        final int[] pos = new int[6];
+        final double[] usoTipo, usoSector;
+        double minimo;    // suma de montoMin del subconjunto
+        double retMin;    // retorno de esos montoMin
+        double piso;      // piso de riesgo (varianza en moneda²)
+
+        Enumeracion(Candidatos k, ContextoBusqueda c, List<Subconjunto> lista){
+            this.k = k; this.c = c; this.lista = lista;
+            this.usoTipo = new double[k.pc.limTipo.length];
+            this.usoSector = new double[k.pc.limSector.length];
+        }
+
+        // subconjunto pos[0..s) (última posición ult); devuelve su cota de subárbol
+        double nodo(int s, int ult){
+            ProblemaCompilado pc = k.pc;
+            double resto = pc.presupuesto - minimo;
+            // llenar primero los extras del subconjunto (más retorno), después los candidatos que siguen
+            double techo = retMin, libre = resto;
+            for (int t = 0; t < s && libre > 0.0; t++) {
+                int a = pos[t];
+                if (k.ret[a] <= 0.0) continue;
+                double x = Math.min(libre, k.tope[a] - k.montoMin(a));
+                techo += x * k.ret[a];
+                libre -= x;
+            }
+            double cota = techo;
+            if (s < 6 && ult + 1 < k.n) {
+                double cap = Math.min(libre, k.topesMayores[ult + 1][6 - s]);
+                for (int b = ult + 1; b < k.n && cap > 0.0 && k.ret[b] > 0.0; b++) {
+                    double x = Math.min(cap, k.tope[b]);
+                    cota += x * k.ret[b];
+                    cap -= x;
+                }
+            }
+            if (c.contarNodo(s)) {
+                c.limites.pendiente(cota);
+                return cota;
+            }
+            if (s + (k.n - ult - 1) < 3) {
+                if (c.est != null) c.est.podasCantidad++;
+                return cota;
+            }
+            if (BBPortafolio.podada(pc, cota, c.best)) {
+                if (c.est != null) c.est.podasCota++;
+                return cota;
+            }
+
+            if (s >= 3) {
+                if (BBPortafolio.podada(pc, techo, c.best)) {
+                    if (c.est != null) c.est.podasCota++;
+                } else if (piso / (pc.presupuesto * pc.presupuesto) > k.riesgoMax2) {
+                    if (c.est != null) c.est.podasRiesgo++;
+                } else {
+                    lista.add(new Subconjunto(Arrays.copyOf(pos, s), techo));
+                }
+            }
+            if (s == 6) return cota;
+
+            for (int b = ult + 1; b < k.n; b++) {
+                int i = k.idx[b], tp = pc.tipo[i], sc = pc.sector[i];
+                double u = k.montoMin(b);
+                if (minimo + u > pc.presupuesto + 1e-9
+                    || usoTipo[tp] + u > pc.limTipo[tp] + 1e-9 || usoSector[sc] + u > pc.limSector[sc] + 1e-9) {
+                    if (c.est != null) c.est.podasTipoSector++;
+                    continue;
+                }
+                double dPiso = k.piso(b, b);
+                for (int t = 0; t < s; t++) dPiso += 2.0 * k.piso(pos[t], b);
+                pos[s] = b;
+                minimo += u; retMin += u * k.ret[b]; piso += dPiso;
+                usoTipo[tp] += u; usoSector[sc] += u;
+                nodo(s + 1, b);
+                minimo -= u; retMin -= u * k.ret[b]; piso -= dPiso;
+                usoTipo[tp] -= u; usoSector[sc] -= u;
+                if (c.limites.detenido()) {
+                    c.limites.pendiente(cota);
+                    return cota;
+                }
+            }
+            return cota;
+        }
+    }
+
+    /** B&B del reparto de lotes dentro de un subconjunto; uno por hilo, se reutiliza entre subconjuntos */
+    private static final class Reparto {
+        final ProblemaCompilado pc;
+        final double[] usoTipo, usoSector;
+        final double[] montos;  // denso, para la hoja
+        // del subconjunto actual (t = 0..k-1, retorno desc)
+        int k;
+        final int[] idx = new int[6], porIndice = new int[6];
+        final double[] u = new double[6], tope = new double[6], ret = new double[6];
+        final double[][] cov = new double[6][6];
+        /** reserva[t] = suma de montoMin de t..k-1; pisoResto[t] = piso entre los no decididos t..k-1 */
+        final double[] reserva = new double[7], pisoResto = new double[7];
+        /** cruce[i][t] = suma sobre j >= t de cov_ij por el peso del piso de j (montoMin o tope según el signo) */
+        final double[][] cruce = new double[6][7];
+        /**
+         * Cota elíptica con el activo t ya decidido y R = t+1..k-1 libres (sin cajas ni presupuesto): inv[t] es la
+         * inversa de la covarianza de R, g[t] = inv[t]·ret_R y h[t] = ret_R·g[t]; sin inversa (R no definida
+         * positiva) conInv[t] es false y solo vale la cota de retorno.
+         */
+        final double[][][] inv = new double[6][6][6];
+        final double[][] g = new double[6][6];
+        final double[] h = new double[6];
+        final boolean[] conInv = new boolean[6];
+        final double[] a = new double[6], yb = new double[6];
+        Candidatos cand;
+        ContextoBusqueda c;
+        boolean sondeo;
+
+        Reparto(ProblemaCompilado pc){
+            this.pc = pc;
+            this.usoTipo = new double[pc.limTipo.length];
+            this.usoSector = new double[pc.limSector.length];
+            this.montos = new double[pc.n];
+        }
+
+        /** Con sondeo se baja por un solo camino: en cada nivel el mayor monto que pasa las cotas */
+        void resolver(Candidatos cand, Subconjunto s, ContextoBusqueda c, boolean sondeo){
+            this.sondeo = sondeo;
+            this.cand = cand;
+            this.c = c;
+            k = s.pos.length;
+            for (int t = 0; t < k; t++) {
+                int b = s.pos[t];
+                idx[t] = cand.idx[b];
+                u[t] = cand.montoMin(b);
+                tope[t] = cand.tope[b];
+                ret[t] = cand.ret[b];
+            }
+            for (int i = 0; i < k; i++) {
+                int j = i;
+                for (; j > 0 && idx[porIndice[j-1]] > idx[i]; j--) porIndice[j] = porIndice[j-1];
+                porIndice[j] = i;
+            }
+            for (int i = 0; i < k; i++)
+                for (int j = 0; j < k; j++) cov[i][j] = cand.cov.get(idx[i], idx[j]);
+            reserva[k] = 0.0;
+            pisoResto[k] = 0.0;
+            for (int t = k - 1; t >= 0; t--) {
+                reserva[t] = reserva[t+1] + u[t];
+                double d = cov[t][t] * u[t] * u[t];
+                for (int j = t + 1; j < k; j++) d += 2.0 * pisoPar(t, j);
+                pisoResto[t] = pisoResto[t+1] + d;
+            }
+            for (int i = 0; i < k; i++) {
+                cruce[i][k] = 0.0;
+                for (int t = k - 1; t >= 0; t--)
+                    cruce[i][t] = cruce[i][t+1] + cov[i][t] * (cov[i][t] >= 0.0 ? u[t] : tope[t]);
+            }
+            for (int t = 0; t < k; t++) {
+                conInv[t] = invertir(cov, t + 1, k, inv[t]);
+                if (!conInv[t]) continue;
+                h[t] = 0.0;
+                for (int j = t + 1; j < k; j++) {
+                    double v = 0.0;
+                    for (int l = t + 1; l < k; l++) v += inv[t][j][l] * ret[l];
+                    g[t][j] = v;
+                    h[t] += ret[j] * v;
+                }
+            }
+            buscar(0, 0.0, 0.0, 0.0);
+        }
+
+        private double pisoPar(int i, int j){
+            double v = cov[i][j];
+            return v >= 0.0 ? v * u[i] * u[j] : v * tope[i] * tope[j];
+        }
+
+        // decidir el activo t: usado = capital ya asignado, retFijo y quad (varianza exacta en moneda²) de a[0..t)
+        private void buscar(int t, double usado, double retFijo, double quad){
+            if (c.contarNodo(t)) return;
+            if (t == k) {
+                hoja(retFijo, quad);
+                return;
+            }
+            int i = idx[t], tp = pc.tipo[i], sc = pc.sector[i];
+            double cap = Math.min(tope[t], pc.presupuesto - usado - reserva[t+1]);
+            cap = Math.min(cap, Math.min(pc.limTipo[tp] - usoTipo[tp], pc.limSector[sc] - usoSector[sc]));
+            int qmax = (int) Math.floor((cap + 1e-9) / u[t]);
+            if (qmax < 1) {
+                if (c.est != null) c.est.podasTipoSector++;
+                return;
+            }
+            // el piso de riesgo es convexo en el monto x de t (qa·x² + qb·x + qc): solo sirve el intervalo donde no pasa el límite
+            double lim2 = cand.riesgoMax2 * pc.presupuesto * pc.presupuesto;
+            double cruz = 0.0, mixto = 0.0;
+            for (int j = 0; j < t; j++) {
+                cruz += a[j] * cov[j][t];
+                mixto += 2.0 * a[j] * cruce[j][t+1];
+            }
+            double resto = pisoResto[t+1] + mixto;
+            double qa = cov[t][t], qb = 2.0 * (cruz + cruce[t][t+1]);
+            double qc = quad + resto - lim2;
+            double xlo = 0.0, xhi = Double.POSITIVE_INFINITY;
+            if (qa > 0.0) {
+                double disc = qb * qb - 4.0 * qa * qc;
+                if (disc < 0.0) xhi = -1.0;
+                else {
+                    double r = Math.sqrt(disc);
+                    xlo = (-qb - r) / (2.0 * qa);
+                    xhi = (-qb + r) / (2.0 * qa);
+                }
+            } else if (qb > 0.0) xhi = -qc / qb;
+            else if (qb < 0.0) xlo = -qc / qb;
+            else if (qc > 0.0) xhi = -1.0;
+            int qlo = (int) Math.max(1, Math.ceil(xlo / u[t] - 1e-9));
+            qmax = (int) Math.min(qmax, Math.floor(xhi / u[t] + 1e-9));
+            if (qlo > qmax) {
+                c.rechazosRiesgo++;
+                if (c.est != null) c.est.podasRiesgo++;
+                return;
+            }
+            // cota elíptica en función de x: con y = covarianzas de R con lo decidido, completar el cuadrado en R da
+            // varianza de R desplazada <= S(x) = s0 + s1·x + s2·x² y retorno de R <= sqrt(S·h) - g·y; S es cóncava
+            // solo si s2 = c'·inv·c - cov_tt <= 0 (complemento de Schur de R no negativo), que la matriz del mercado
+            // no garantiza por no ser semidefinida positiva: sin eso no se corta el recorrido de x
+            boolean eliptica = conInv[t], concava = false;
+            double s0 = 0.0, s1 = 0.0, s2 = 0.0, alfa = 0.0, beta = 0.0;
+            if (eliptica) {
+                double[][] m = inv[t];
+                for (int j = t + 1; j < k; j++) {
+                    double v = 0.0;
+                    for (int l = 0; l < t; l++) v += a[l] * cov[l][j];
+                    yb[j] = v;
+                }
+                double aa = 0.0, ab = 0.0, bb = 0.0, g0 = 0.0, g1 = 0.0;
+                for (int j = t + 1; j < k; j++) {
+                    double py = 0.0, pt = 0.0;
+                    for (int l = t + 1; l < k; l++) { py += m[j][l] * yb[l]; pt += m[j][l] * cov[t][l]; }
+                    aa += yb[j] * py; ab += cov[t][j] * py; bb += cov[t][j] * pt;
+                    g0 += g[t][j] * yb[j]; g1 += g[t][j] * cov[t][j];
+                }
+                s0 = lim2 - quad + aa;
+                s1 = 2.0 * (ab - cruz);
+                s2 = bb - cov[t][t];
+                concava = s2 <= 0.0;
+                alfa = retFijo - g0;
+                beta = ret[t] - g1;
+            }
+
+            boolean ultimo = t == k - 1;
+            if (ultimo && ret[t] < 0.0) qmax = qlo;  // en el último el retorno solo depende de x
+
+            for (int q = qmax; q >= qlo; q--) {
+                double x = q * u[t];
+                // con retornos desc la cota crece con x: si ya no alcanza, menos monto tampoco
+                double cota = retFijo + x * ret[t] + completar(t + 1, pc.presupuesto - usado - x);
+                if (BBPortafolio.podada(pc, cota, c.best)) {
+                    if (c.est != null) c.est.podasCota++;
+                    if (ret[t] >= 0.0) break;
+                    continue;
+                }
+                if (t == k - 2 && ret[k-1] > 0.0) {
+                    // el último recibe lo que queda hasta su tope, su tipo y su sector, en lotes enteros (sin mirar riesgo)
+                    int ul = idx[k-1], tl = pc.tipo[ul], sl = pc.sector[ul];
+                    double y = Math.min(tope[k-1], pc.presupuesto - usado - x);
+                    y = Math.min(y, pc.limTipo[tl] - usoTipo[tl] - (tl == tp ? x : 0.0));
+                    y = Math.min(y, pc.limSector[sl] - usoSector[sl] - (sl == sc ? x : 0.0));
+                    y = Math.floor((y + 1e-9) / u[k-1]) * u[k-1];
+                    if (BBPortafolio.podada(pc, retFijo + x * ret[t] + y * ret[k-1], c.best)) {
+                        if (c.est != null) c.est.podasCota++;
+                        continue;
+                    }
+                }
+                if (eliptica) {
+                    // con S y la cota cóncavas, si fallan en x y no decrecen ahí, con menos monto fallan también
+                    double sx = s0 + (s1 + s2 * x) * x, ds = s1 + 2.0 * s2 * x;
+                    if (sx < 0.0) {
+                        c.rechazosRiesgo++;
+                        if (c.est != null) c.est.podasRiesgo++;
+                        if (concava && ds >= 0.0) break;
+                        continue;
+                    }
+                    double raiz = Math.sqrt(sx * h[t]);
+                    if (BBPortafolio.podada(pc, alfa + beta * x + raiz, c.best)) {
+                        if (c.est != null) c.est.podasCota++;
+                        if (concava && (raiz > 0.0 ? beta + h[t] * ds / (2.0 * raiz) >= 0.0 : beta >= 0.0 && ds >= 0.0)) break;
+                        continue;
+                    }
+                }
+                double q2 = quad + x * x * cov[t][t] + 2.0 * x * cruz;
+                if (q2 + resto + 2.0 * x * cruce[t][t+1] > lim2) {
+                    c.rechazosRiesgo++;  // borde del intervalo por redondeo
+                    if (c.est != null) c.est.podasRiesgo++;
+                    continue;
+                }
+                a[t] = x;
+                usoTipo[tp] += x; usoSector[sc] += x;
+                buscar(t + 1, usado + x, retFijo + x * ret[t], q2);
+                usoTipo[tp] -= x; usoSector[sc] -= x;
+                if (c.limites.detenido() || ultimo || sondeo) return;
+            }
+        }
+
+        // retorno máximo de los activos t..k-1 con capital libre: cada uno su montoMin y el resto fraccional por retorno
+        private double completar(int t, double libre){
+            double r = 0.0;
+            libre -= reserva[t];
+            for (int j = t; j < k; j++) {
+                r += u[j] * ret[j];
+                if (libre > 0.0 && ret[j] > 0.0) {
+                    double x = Math.min(libre, tope[j] - u[j]);
+                    r += x * ret[j];
+                    libre -= x;
+                }
+            }
+            return r;
+        }
+
+        private void hoja(double retFijo, double quad){
+            if (c.est != null) c.est.hojas++;
+            if (quad > cand.riesgoMax2 * pc.presupuesto * pc.presupuesto) {
+                c.rechazosRiesgo++;
+                if (c.est != null) c.est.hojasInfactibles++;
+                return;
+            }
+            // retorno sumado en orden de índice, igual que EstadoBusqueda.retornoExacto (empates consistentes)
+            double r = 0.0;
+            for (int j = 0; j < k; j++) r += a[porIndice[j]] / pc.presupuesto * pc.retorno[idx[porIndice[j]]];
+            if (r + 1e-12 < pc.retornoRequerido || r < c.best.get().retorno - 1e-12) return;
+            for (int t = 0; t < k; t++) montos[idx[t]] = a[t];
+            try {
+                double corr = BBPortafolio.correlacionMedia(pc.m, montos);
+                if (!new Incumbente(null, r, 0.0, corr).superaA(c.best.get())) return;
+                Asignacion asig = pc.aAsignacion(montos);
+                try {
+                    ValidadorAsignacion.validar(pc.m, pc.p, asig);
+                } catch (IllegalArgumentException ignore) {
+                    if (c.est != null) c.est.hojasInfactibles++;
+                    return;
+                }
+                Incumbente cand = new Incumbente(asig, r, CalculadoraRiesgo.riesgoCartera(pc.m, asig, pc.presupuesto), corr);
+                while (true) {
+                    Incumbente actual = c.best.get();
+                    if (!cand.superaA(actual)) return;
+                    if (c.best.compareAndSet(actual, cand)) {
+                        if (c.registro != null) c.registro.mejora(r, asig);
+                        return;
+                    }
+                }
+            } finally {
+                for (int t = 0; t < k; t++) montos[idx[t]] = 0.0;
+            }
+        }
+    }
+
+    /**
+     * Inversa de c restringida a los índices desde..hasta-1, en inv con los mismos índices. Gauss-Jordan sin
+     * pivoteo: en una simétrica los pivotes son todos positivos si y solo si es definida positiva; si alguno
+     * no lo es o es casi nulo (inversa poco confiable para una cota) devuelve false. Con el rango vacío devuelve true.
+     */
+    static boolean invertir(double[][] c, int desde, int hasta, double[][] inv){
+        int m = hasta - desde;
+        double[][] w = new double[m][2 * m];
+        double escala = 0.0;
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) w[i][j] = c[desde + i][desde + j];
+            w[i][m + i] = 1.0;
+            escala = Math.max(escala, w[i][i]);
+        }
+        for (int p = 0; p < m; p++) {
+            double piv = w[p][p];
+            if (!(piv > 1e-8 * escala)) return false;
+            for (int j = 0; j < 2 * m; j++) w[p][j] /= piv;
+            for (int i = 0; i < m; i++) {
+                if (i == p || w[i][p] == 0.0) continue;
+                double f = w[i][p];
+                for (int j = 0; j < 2 * m; j++) w[i][j] -= f * w[p][j];
+            }
+        }
+        for (int i = 0; i < m; i++)
+            for (int j = 0; j < m; j++) inv[desde + i][desde + j] = w[i][m + j];
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package optimizacion;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Búsqueda mejor-primero: expande siempre el nodo abierto de mayor cota, de modo que
+ * esa cota es en todo momento una cota superior probada del óptimo. Si la lista de
+ * abiertos supera el presupuesto de memoria, el nodo extraído se resuelve entero con
+ * el backtracking en profundidad en lugar de encolar sus hijos.
+ */
+final class BusquedaMejorPrimero {
+    private BusquedaMejorPrimero(){}
+
+    // Nodo abierto: profundidad, cota y los montos ya decididos (a lo sumo 6 activos)
+    private static final class Nodo {
+        final int k;
+        final double cota;
+        final int[] activos;
+        final double[] montos;
+
+        Nodo(int k, double cota, int[] activos, double[] montos) {
+            this.k = k; this.cota = cota; this.activos = activos; this.montos = montos;
+        }
+
+        Nodo hijo(double cota, int idx, double delta) {
+            if (delta <= 0.0) return new Nodo(k + 1, cota, activos, montos);
+            int[] a = Arrays.copyOf(activos, activos.length + 1);
+            double[] mo = Arrays.copyOf(montos, montos.length + 1);
+            a[activos.length] = idx;
+            mo[montos.length] = delta;
+            return new Nodo(k + 1, cota, a, mo);
+        }
+    }
+
+    // Cada tantas cargas se reconstruye el estado para no acumular error de redondeo
+    private static final int RECONSTRUIR_CADA = 4096;
+
+    /**
+     * Ejecuta la búsqueda y devuelve la cantidad de nodos visitados. Si se agotan los límites,
+     * deja en {@code lim} la mayor cota entre los nodos que quedaron abiertos.
+     */
+    static long ejecutar(ProblemaCompilado pc, AtomicReference<Incumbente> best, Limites lim, OpcionesBusqueda op,
+                        EstadisticasBusqueda.Registro reg, TablaTransposicion.PorHilo tablas) {
+        PriorityQueue<Nodo> abiertos = new PriorityQueue<>((x, y) -> {
+            int c = Double.compare(y.cota, x.cota);
+            return c != 0 ? c : Integer.compare(y.k, x.k);  // empate: el más profundo primero
+        });
+
+        if (pc.niveles == 0) return 0;
+        EstadoBusqueda e = new EstadoBusqueda(pc);
+        Nodo raiz = new Nodo(0, BBPortafolio.boundOptimista(pc, e, 0), new int[0], new double[0]);
+        abiertos.add(raiz);
+
+        ContextoBusqueda c = new ContextoBusqueda(pc, best, lim, reg, tablas);
+        Nodo cargado = raiz;
+        int cargas = 0;
+        double ultimaCota = Double.POSITIVE_INFINITY, ultimoInc = Double.NaN;
+
+        while (!abiertos.isEmpty()) {
+            Nodo nd = abiertos.poll();
+            // Es el de mayor cota: si se poda, se podan todos los restantes
+            if (BBPortafolio.podada(pc, nd.cota, best)) {
+                if (c.est != null) c.est.podasCota += 1 + abiertos.size();
+                break;
+            }
+
+            double inc = best.get().retorno;
+            double cota = Math.max(nd.cota, inc);
+            if (op.observador != null && (cota < ultimaCota || inc != ultimoInc)) {
+                op.observador.gap(inc, cota);
+                ultimaCota = cota;
+                ultimoInc = inc;
+            }
+
+            if (++cargas % RECONSTRUIR_CADA == 0) {
+                e = new EstadoBusqueda(pc);
+                cargado = raiz;
+            }
+            cargar(e, cargado, nd);
+            cargado = nd;
+
+            if (abiertos.size() >= op.maxNodosAbiertos) {
+                // Sin memoria para más abiertos: buceo en profundidad sobre este subárbol
+                BBPortafolio.backtrack(nd.k, e, c);
+                if (lim.detenido()) break;  // el buceo ya dejó su frontera en lim
+                continue;
+            }
+
+            if (c.contarNodo(nd.k)) {
+                lim.pendiente(nd.cota);
+                break;
+            }
+            int k = nd.k;
+            int idx = pc.orden[k];
+            double unit = pc.montoMin[idx];
+            int qmax = (int)Math.floor(Math.min(e.presupuestoRest, pc.topeActivo) / unit);
+
+            for (int j = 0, ramas = pc.ramas(k, qmax); j < ramas; j++) {
+                double delta = pc.rama(k, qmax, j) * unit;
+                if (delta >= 1e-9) {
+                    if (!BBPortafolio.admisible(pc, e, idx, delta, c)) continue;
+                    e.aplicar(idx, delta);
+                }
+
+                if (k + 1 == pc.niveles || e.presupuestoRest < 1e-6) {
+                    c.nodos++;
+                    if (c.est != null) c.est.porProfundidad[k + 1]++;
+                    BBPortafolio.evaluarYActualizar(c, e);
+                } else {
+                    double ub = BBPortafolio.boundOptimista(pc, e, k + 1);
+                    if (!BBPortafolio.podada(pc, ub, best)) abiertos.add(nd.hijo(ub, idx, delta));
+                    else if (c.est != null) c.est.podasCota++;
+                }
+
+                if (delta >= 1e-9) e.deshacer(idx, delta);
+            }
+        }
+
+        if (lim.detenido() && !abiertos.isEmpty()) lim.pendiente(abiertos.peek().cota);
+        c.cerrar();
+        return c.nodos;
+    }
+
+    // Lleva el estado del nodo 'desde' al nodo 'hasta'
+    private static void cargar(EstadoBusqueda e, Nodo desde, Nodo hasta) {
+        for (int i = 0; i < desde.activos.length; i++) e.deshacer(desde.activos[i], desde.montos[i]);
+        for (int i = 0; i < hasta.activos.length; i++) e.aplicar(hasta.activos[i], hasta.montos[i]);
+    }
+}
@@ -0,0 +1,109 @@
+package optimizacion;
+
+import model.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU de resultados de {@link BBPortafolio#maximizarRetorno} para perfiles repetidos.
+ * La clave es la forma canónica del Perfil (todo lo que influye en la solución) y el cache
+ * se vacía solo cuando cambia la huella del Mercado. Solo se guardan óptimos probados,
+ * así un resultado cortado por plazo nunca se sirve como definitivo. Seguro entre hilos.
+ *
+ * Al cambiar el mercado los resultados de la versión anterior se guardan aparte (una sola
+ * generación): un perfil que estaba resuelto se re-optimiza desde ahí con
+ * {@link BBPortafolio#reoptimizar} en lugar de resolverse en frío.
+ */
+public final class CacheSoluciones {
+    private static final int MAX_ACTIVOS = 6;
+
+    private final LinkedHashMap<String, BBPortafolio.Resultado> mapa;
+    private long huellaMercado;
+    private Mercado mercado;
+    private Map<String, BBPortafolio.Resultado> anteriores = Map.of();
+    private Mercado mercadoAnterior;
+    private final LongAdder aciertos = new LongAdder(), fallos = new LongAdder();
+
+    public CacheSoluciones(int capacidad) {
+        if (capacidad <= 0) throw new IllegalArgumentException("capacidad debe ser > 0");
+        this.mapa = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BBPortafolio.Resultado> e) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    public BBPortafolio.Resultado maximizarRetorno(Mercado m, Perfil p) {
+        return maximizarRetorno(m, p, OpcionesBusqueda.secuencial());
+    }
+
+    public BBPortafolio.Resultado maximizarRetorno(Mercado m, Perfil p, OpcionesBusqueda op) {
+        long huella = m.huella();
+        String clave = clave(p);
+        BBPortafolio.Resultado previo;
+        Mercado mercadoPrevio;
+        synchronized (this) {
+            if (huella != huellaMercado) {
+                if (mercado != null && !mapa.isEmpty()) {
+                    anteriores = new HashMap<>(mapa);
+                    mercadoAnterior = mercado;
+                }
+                mapa.clear();
+                huellaMercado = huella;
+                mercado = m;
+            }
+            BBPortafolio.Resultado r = mapa.get(clave);
+            if (r != null) {
+                aciertos.increment();
+                return r;
+            }
+            previo = anteriores.get(clave);
+            mercadoPrevio = mercadoAnterior;
+        }
+        fallos.increment();
+
+        // Se resuelve fuera del lock: dos hilos con la misma clave pueden resolverla a la vez
+        BBPortafolio.Resultado r = previo != null
+                ? BBPortafolio.reoptimizar(m, p, previo, mercadoPrevio, op)
+                : BBPortafolio.maximizarRetorno(m, p, op);
+        if (r.optimoProbado) {
+            synchronized (this) {
+                if (huella == huellaMercado) mapa.put(clave, r);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Forma canónica del perfil: presupuesto, riesgoMax, maxPorActivo, retorno mínimo efectivo
+     * y los topes por tipo/sector ordenados, sin los que no pueden restringir: una categoría no
+     * junta más que el presupuesto ni más de MAX_ACTIVOS activos a maxPorActivo cada uno.
+     */
+    static String clave(Perfil p) {
+        double porActivo = Math.min(1.0, p.maxPorActivo);
+        double efectivo = Math.min(1.0, MAX_ACTIVOS * porActivo);
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(p.presupuesto).append('|').append(p.riesgoMax).append('|')
+          .append(porActivo).append('|').append(Math.max(p.retornoMin, p.retornoMinDeseado));
+        topes(sb.append("|T"), p.maxPorTipo, efectivo);
+        topes(sb.append("|S"), p.maxPorSector, efectivo);
+        return sb.toString();
+    }
+
+    private static void topes(StringBuilder sb, Map<String, Double> topes, double efectivo) {
+        for (var e : new TreeMap<>(topes).entrySet()) {
+            if (e.getValue() >= efectivo) continue;
+            sb.append(';').append(e.getKey()).append('=').append(e.getValue());
+        }
+    }
+
+    public long aciertos() { return aciertos.sum(); }
+    public long fallos() { return fallos.sum(); }
+    public synchronized int tamanio() { return mapa.size(); }
+    public synchronized void limpiar() {
+        mapa.clear();
+        anteriores = Map.of();
+        mercadoAnterior = null;
+    }
+}
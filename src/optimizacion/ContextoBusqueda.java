@@ -0,0 +1,49 @@
+package optimizacion;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Estado por hilo de una búsqueda: contador de nodos local y referencias compartidas */
+final class ContextoBusqueda {
+    final ProblemaCompilado pc;
+    final AtomicReference<Incumbente> best;
+    final Limites limites;
+    /** null si no hay estadísticas ni observador */
+    final EstadisticasBusqueda.Registro registro;
+    /** Contadores del hilo; null con las estadísticas apagadas (cada uso es un chequeo de null) */
+    final EstadisticasBusqueda.Contadores est;
+    /** Tabla de transposición del hilo; null si no se pidió */
+    final TablaTransposicion tabla;
+    long nodos;
+    /** Nodos ya sumados a limites */
+    private long informados;
+    /** Rechazos que dependen del riesgo (poda tentativa o validador): invalidan la cota del subárbol para la tabla */
+    long rechazosRiesgo;
+    /** Mayor retorno de hoja con 3..6 activos en el subárbol en curso */
+    double mejorHoja = Double.NEGATIVE_INFINITY;
+
+    ContextoBusqueda(ProblemaCompilado pc, AtomicReference<Incumbente> best, Limites limites,
+                     EstadisticasBusqueda.Registro registro, TablaTransposicion.PorHilo tablas) {
+        this.pc = pc;
+        this.best = best;
+        this.limites = limites;
+        this.registro = registro;
+        this.est = registro != null && registro.contar ? registro.delHilo() : null;
+        this.tabla = tablas != null ? tablas.delHilo() : null;
+    }
+
+    /** Cuenta un nodo de profundidad k; cada {@code limites.intervalo} nodos revisa plazo y tope. true = hay que cortar. */
+    boolean contarNodo(int k) {
+        if (est != null) est.porProfundidad[k]++;
+        if (++nodos - informados >= limites.intervalo) {
+            limites.revisar(nodos - informados);
+            informados = nodos;
+        }
+        return limites.detenido();
+    }
+
+    /** Al terminar el trabajo del contexto: suma a limites los nodos que no llegaron a completar un bloque */
+    void cerrar() {
+        limites.sumar(nodos - informados);
+        informados = nodos;
+    }
+}
@@ -0,0 +1,162 @@
+package optimizacion;
+
+import model.Asignacion;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Estadísticas de una búsqueda (OpcionesBusqueda.estadisticas = true): por qué se podaron los nodos,
+ * cuántos hubo por profundidad y cuándo mejoró el incumbente. Cada hilo cuenta en sus propios
+ * contadores, sin sincronización, y se suman al terminar.
+ */
+public final class EstadisticasBusqueda {
+
+    /** Mejora del incumbente: retorno alcanzado, segundos desde el inicio de la búsqueda y la cartera */
+    public static final class Mejora {
+        public final double retorno;
+        public final double segundos;
+        /** Cartera que dio la mejora (la usa BBPortafolio.reoptimizar para ordenar las ramas) */
+        public final Asignacion asignacion;
+        public Mejora(double retorno, double segundos){
+            this(retorno, segundos, null);
+        }
+        public Mejora(double retorno, double segundos, Asignacion asignacion){
+            this.retorno=retorno; this.segundos=segundos; this.asignacion=asignacion;
+        }
+        @Override public String toString(){
+            return String.format(Locale.US, "%.6f@%.3fs", retorno, segundos);
+        }
+    }
+
+    public final long nodos;
+    /** Nodos descartados porque su cota no supera al incumbente o al retorno mínimo */
+    public final long podasCota;
+    /** Ramas descartadas por tope de tipo o de sector */
+    public final long podasTipoSector;
+    /** Ramas descartadas porque el riesgo tentativo excede el máximo */
+    public final long podasRiesgo;
+    /** Ramas descartadas por tener ya 6 activos distintos */
+    public final long podasCantidad;
+    /** Hojas evaluadas y, de ellas, las que no son una cartera válida (cantidad, retorno mínimo o ValidadorAsignacion) */
+    public final long hojas;
+    public final long hojasInfactibles;
+    /** nodosPorProfundidad[k] = nodos visitados con k activos ya decididos */
+    public final long[] nodosPorProfundidad;
+    /** Activos que el presolve sacó del árbol, por motivo */
+    public final int descartadosInviables, descartadosDominados;
+    /** Tabla de transposición: consultas, claves encontradas y subárboles saltados (0 sin tabla) */
+    public final long consultasTabla, aciertosTabla, podasTabla;
+    /** La primera es la cota inicial (Greedy mejorado por búsqueda local) */
+    public final List<Mejora> mejoras;
+    public final double segundos;
+
+    EstadisticasBusqueda(Contadores total, List<Mejora> mejoras, double segundos, ProblemaCompilado pc, long[] tabla){
+        this.nodos = total.nodos();
+        this.podasCota = total.podasCota;
+        this.podasTipoSector = total.podasTipoSector;
+        this.podasRiesgo = total.podasRiesgo;
+        this.podasCantidad = total.podasCantidad;
+        this.hojas = total.hojas;
+        this.hojasInfactibles = total.hojasInfactibles;
+        int fin = total.porProfundidad.length;
+        while (fin > 0 && total.porProfundidad[fin-1] == 0) fin--;
+        this.nodosPorProfundidad = Arrays.copyOf(total.porProfundidad, fin);
+        this.mejoras = Collections.unmodifiableList(mejoras);
+        this.segundos = segundos;
+        this.descartadosInviables = pc.descartadosInviables;
+        this.descartadosDominados = pc.descartadosDominados;
+        this.consultasTabla = tabla[0];
+        this.aciertosTabla = tabla[1];
+        this.podasTabla = tabla[2];
+    }
+
+    /** Fracción de consultas a la tabla de transposición que encontraron la clave */
+    public double tasaAciertosTabla(){
+        return consultasTabla == 0 ? 0.0 : (double) aciertosTabla / consultasTabla;
+    }
+
+    /** Segundos hasta la última mejora (la que dio el resultado final) */
+    public double segundosHastaIncumbente(){
+        return mejoras.isEmpty() ? 0.0 : mejoras.get(mejoras.size()-1).segundos;
+    }
+
+    @Override public String toString(){
+        return String.format(Locale.US,
+            "descartados[inviables=%d dominados=%d] nodos=%d podas[cota=%d tipo/sector=%d riesgo=%d cantidad=%d] hojas=%d (infactibles %d) "
+            + "tabla[aciertos=%d/%d podas=%d] mejoras=%d (última a %.3fs) en %.3fs%n  nodos por profundidad: %s",
+            descartadosInviables, descartadosDominados, nodos, podasCota, podasTipoSector, podasRiesgo, podasCantidad, hojas, hojasInfactibles,
+            aciertosTabla, consultasTabla, podasTabla, mejoras.size(), segundosHastaIncumbente(), segundos, Arrays.toString(nodosPorProfundidad));
+    }
+
+    // ---------- recolección ----------
+
+    /** Contadores de un hilo; solo los toca ese hilo */
+    static final class Contadores {
+        long podasCota, podasTipoSector, podasRiesgo, podasCantidad, hojas, hojasInfactibles;
+        final long[] porProfundidad;
+
+        Contadores(int n){ this.porProfundidad = new long[n + 2]; }
+
+        long nodos(){
+            long s = 0;
+            for (long v : porProfundidad) s += v;
+            return s;
+        }
+
+        void sumar(Contadores o){
+            podasCota += o.podasCota; podasTipoSector += o.podasTipoSector;
+            podasRiesgo += o.podasRiesgo; podasCantidad += o.podasCantidad;
+            hojas += o.hojas; hojasInfactibles += o.hojasInfactibles;
+            for (int k = 0; k < porProfundidad.length; k++) porProfundidad[k] += o.porProfundidad[k];
+        }
+    }
+
+    /** Lo que comparten los hilos de una búsqueda: reloj, mejoras y los contadores de cada hilo */
+    static final class Registro {
+        final boolean contar;
+        final ObservadorBusqueda observador;
+        private final int n;
+        private final long t0 = System.nanoTime();
+        private final ConcurrentLinkedQueue<Mejora> mejoras = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Contadores> porHilo = new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<Contadores> local;
+
+        Registro(int n, boolean contar, ObservadorBusqueda observador){
+            this.n = n;
+            this.contar = contar;
+            this.observador = observador;
+            this.local = ThreadLocal.withInitial(this::nuevos);
+        }
+
+        /** Contadores del hilo actual (uno por hilo, no por tarea) */
+        Contadores delHilo(){ return local.get(); }
+
+        private Contadores nuevos(){
+            Contadores c = new Contadores(n);
+            porHilo.add(c);
+            return c;
+        }
+
+        double segundos(){ return (System.nanoTime() - t0) / 1e9; }
+
+        void mejora(double retorno, Asignacion a){
+            double t = segundos();
+            if (contar) mejoras.add(new Mejora(retorno, t, a));
+            if (observador != null) observador.mejora(retorno, t);
+        }
+
+        EstadisticasBusqueda cerrar(ProblemaCompilado pc, long[] tabla){
+            local.remove();  // el hilo llamador puede seguir vivo (lote, servidor)
+            Contadores total = new Contadores(n);
+            for (Contadores c : porHilo) total.sumar(c);
+            // con varios hilos las mejoras pueden llegar desordenadas; se dejan las que superan a la anterior
+            List<Mejora> orden = new ArrayList<>(mejoras);
+            orden.sort(Comparator.comparingDouble(x -> x.segundos));
+            List<Mejora> lista = new ArrayList<>();
+            for (Mejora x : orden) {
+                if (lista.isEmpty() || x.retorno >= lista.get(lista.size()-1).retorno) lista.add(x);
+            }
+            return new EstadisticasBusqueda(total, lista, segundos(), pc, tabla);
+        }
+    }
+}
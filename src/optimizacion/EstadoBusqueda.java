@@ -0,0 +1,79 @@
+package optimizacion;
+
+import model.RiesgoIncremental;
+
+/**
+ * Estado mutable de la búsqueda sobre un ProblemaCompilado: montos, uso por
+ * tipo/sector, retorno parcial y riesgo incremental, todo en arreglos primitivos.
+ * aplicar/deshacer no reservan memoria.
+ */
+final class EstadoBusqueda {
+    final ProblemaCompilado pc;
+    final double[] montos;       // por índice de activo
+    final double[] usoTipo, usoSector;
+    final RiesgoIncremental riesgo;
+    double retParcial;
+    double presupuestoRest;
+    int distintos;
+
+    // buffers de la cota (por estado, para no reservar memoria por nodo)
+    final double[] topCap = new double[6], topVal = new double[6];
+
+    EstadoBusqueda(ProblemaCompilado pc) {
+        this.pc = pc;
+        this.montos = new double[pc.n];
+        this.usoTipo = new double[pc.limTipo.length];
+        this.usoSector = new double[pc.limSector.length];
+        this.riesgo = new RiesgoIncremental(pc.m, pc.presupuesto);
+        this.presupuestoRest = pc.presupuesto;
+    }
+
+    private EstadoBusqueda(EstadoBusqueda o) {
+        this.pc = o.pc;
+        this.montos = o.montos.clone();
+        this.usoTipo = o.usoTipo.clone();
+        this.usoSector = o.usoSector.clone();
+        this.riesgo = o.riesgo.copia();
+        this.retParcial = o.retParcial;
+        this.presupuestoRest = o.presupuestoRest;
+        this.distintos = o.distintos;
+    }
+
+    EstadoBusqueda copia() {
+        return new EstadoBusqueda(this);
+    }
+
+    /** Suma delta (> 0) al activo i */
+    void aplicar(int i, double delta) {
+        if (montos[i] <= 0.0) distintos++;
+        montos[i] += delta;
+        usoTipo[pc.tipo[i]] += delta;
+        usoSector[pc.sector[i]] += delta;
+        retParcial += delta / pc.presupuesto * pc.retorno[i];
+        presupuestoRest -= delta;
+        riesgo.aplicar(i, delta);
+    }
+
+    /** Revierte un aplicar(i, delta) previo */
+    void deshacer(int i, double delta) {
+        riesgo.deshacer(i, delta);
+        presupuestoRest += delta;
+        retParcial -= delta / pc.presupuesto * pc.retorno[i];
+        usoSector[pc.sector[i]] -= delta;
+        usoTipo[pc.tipo[i]] -= delta;
+        montos[i] -= delta;
+        if (montos[i] <= 1e-12) {
+            montos[i] = 0.0;
+            distintos--;
+        }
+    }
+
+    /** Retorno exacto de la cartera actual (misma suma que CalculadoraRetorno) */
+    double retornoExacto() {
+        double suma = 0.0;
+        for (int i = 0; i < montos.length; i++) {
+            if (montos[i] > 0.0) suma += montos[i] / pc.presupuesto * pc.retorno[i];
+        }
+        return suma;
+    }
+}
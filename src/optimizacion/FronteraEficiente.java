@@ -0,0 +1,188 @@
+package optimizacion;
+
+import model.*;
+import validacion.ValidadorAsignacion;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Frontera eficiente: la cartera de máximo retorno para cada riesgoMax de una grilla, en una sola llamada.
+ *
+ * El óptimo para un riesgoMax es válido para cualquier riesgoMax mayor, y su cota acota a todos los menores:
+ *  - un punto resuelto cubre sin buscar a los de menor riesgoMax que todavía admiten el riesgo de su
+ *    cartera (sigue siendo la mejor en una región más chica que la contiene);
+ *  - primero se resuelve el mayor riesgoMax; el resto se reparte en tramos contiguos, uno por hilo;
+ *    se resuelve el tope de cada tramo y después, de mayor a menor riesgo, lo que quedó sin cubrir,
+ *    arrancando en caliente desde el óptimo del tramo de abajo (válido: tiene menos riesgo);
+ *  - la cota superior de cada punto es la menor entre la suya y la de cualquier punto de mayor riesgo.
+ */
+public final class FronteraEficiente {
+    private FronteraEficiente(){}
+
+    /** Un punto de la frontera */
+    public static final class Punto {
+        public final double riesgoMax;
+        /** Mejor cartera válida para riesgoMax; null si no hay ninguna o, sin optimoProbado, si no se halló */
+        public final Asignacion asignacion;
+        /** Retorno y riesgo de la asignación (NaN si no hay) */
+        public final double retorno, riesgo;
+        public final double cotaSuperior;
+        public final boolean optimoProbado;
+        /** Nodos del Branch & Bound de este punto; 0 si comparte la cartera de un punto de mayor riesgo */
+        public final long nodosVisitados;
+
+        Punto(double riesgoMax, Asignacion a, double retorno, double riesgo, double cota, boolean probado, long nodos){
+            this.riesgoMax=riesgoMax; this.asignacion=a; this.retorno=retorno; this.riesgo=riesgo;
+            this.cotaSuperior=cota; this.optimoProbado=probado; this.nodosVisitados=nodos;
+        }
+
+        private Punto conRiesgoMax(double r){
+            return new Punto(r, asignacion, retorno, riesgo, cotaSuperior, optimoProbado, 0);
+        }
+
+        private Punto conCota(double c){
+            return new Punto(riesgoMax, asignacion, retorno, riesgo, c, optimoProbado, nodosVisitados);
+        }
+
+        @Override public String toString(){
+            return asignacion == null
+                ? String.format(Locale.US, optimoProbado ? "riesgoMax=%.4f sin cartera válida"
+                                                         : "riesgoMax=%.4f sin cartera hallada (no probado)", riesgoMax)
+                : String.format(Locale.US, "riesgoMax=%.4f riesgo=%.4f retorno=%.6f%s nodos=%d %s",
+                    riesgoMax, riesgo, retorno, optimoProbado ? "" : String.format(Locale.US, " (cota %.6f)", cotaSuperior),
+                    nodosVisitados, asignacion.getMontos());
+        }
+    }
+
+    /** n valores equiespaciados de desde a hasta (inclusive) */
+    public static double[] grilla(double desde, double hasta, int n){
+        if (n < 1) throw new IllegalArgumentException("La grilla necesita al menos un punto");
+        if (!(desde > 0.0) || hasta < desde) throw new IllegalArgumentException("Rango de riesgo inválido: " + desde + ".." + hasta);
+        double[] r = new double[n];
+        for (int i = 0; i < n; i++) r[i] = n == 1 ? hasta : desde + (hasta - desde) * i / (n - 1);
+        return r;
+    }
+
+    public static List<Punto> calcular(Mercado m, Perfil p, double[] riesgos){
+        return calcular(m, p, riesgos, OpcionesBusqueda.secuencial(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Resuelve cada riesgoMax de riesgos (el resto del perfil queda igual) y devuelve los puntos
+     * ordenados por riesgoMax. op se usa en cada punto; hilos es cuántos tramos corren a la vez.
+     */
+    public static List<Punto> calcular(Mercado m, Perfil p, double[] riesgos, OpcionesBusqueda op, int hilos){
+        Objects.requireNonNull(m); Objects.requireNonNull(p); Objects.requireNonNull(op);
+        if (riesgos.length == 0) return List.of();
+        double[] r = riesgos.clone();
+        Arrays.sort(r);
+        if (!(r[0] > 0.0)) throw new IllegalArgumentException("Los riesgos de la grilla deben ser > 0");
+        int n = r.length;
+        Punto[] pts = new Punto[n];
+
+        // el de mayor riesgo en frío; su cartera vale para todos los riesgoMax que la admiten
+        pts[n-1] = resolver(m, p, r[n-1], op, null);
+        int fin = cubrir(pts, r, n - 1, 0);
+
+        // si la cartera del mayor riesgo los cubre a todos (riesgoMax no limita) no queda nada por resolver
+        if (fin > 0) resolverTramos(m, p, r, op, hilos, pts, fin);
+
+        // cada cota vale también para los riesgos menores
+        double cota = Double.POSITIVE_INFINITY;
+        for (int i = n - 1; i >= 0; i--) {
+            if (pts[i].cotaSuperior < cota) cota = pts[i].cotaSuperior;
+            else pts[i] = pts[i].conCota(cota);
+        }
+        return Arrays.asList(pts);
+    }
+
+    // pts[fin..n) ya resueltos: resuelve pts[0..fin) (fin > 0)
+    private static void resolverTramos(Mercado m, Perfil p, double[] r, OpcionesBusqueda op, int hilos,
+                                       Punto[] pts, int fin){
+        // pts[0..fin) en tramos contiguos: primero el tope de cada tramo (en paralelo), que cubre lo que
+        // admite su cartera; después lo que queda de cada tramo, de mayor a menor riesgo para que cada
+        // punto cubra a los de abajo, arrancando en caliente desde el tope del tramo inferior
+        int tramos = Math.max(1, Math.min(hilos, fin));
+        int[] inicio = new int[tramos + 1];
+        for (int t = 0; t <= tramos; t++) inicio[t] = (int) ((long) fin * t / tramos);
+        int[] libres = new int[tramos];
+        List<Callable<Void>> topes = new ArrayList<>(), resto = new ArrayList<>();
+        for (int t = 0; t < tramos; t++) {
+            int desde = inicio[t], tope = inicio[t+1] - 1, tr = t;
+            topes.add(() -> {
+                pts[tope] = resolver(m, p, r[tope], op, null);
+                libres[tr] = cubrir(pts, r, tope, desde);
+                return null;
+            });
+            resto.add(() -> {
+                Asignacion previa = tr > 0 ? pts[desde - 1].asignacion : null;
+                for (int i = libres[tr] - 1; i >= desde; ) {
+                    pts[i] = resolver(m, p, r[i], op, previa);
+                    i = cubrir(pts, r, i, desde) - 1;
+                }
+                return null;
+            });
+        }
+        ExecutorService ex = tramos > 1 ? Executors.newFixedThreadPool(tramos) : null;
+        try {
+            correr(ex, topes);
+            correr(ex, resto);
+        } finally {
+            if (ex != null) ex.shutdownNow();
+        }
+    }
+
+    // pts[j] ya resuelto: los puntos de abajo (hasta desde) que admiten su cartera la comparten; devuelve el primero cubierto
+    private static int cubrir(Punto[] pts, double[] r, int j, int desde){
+        int i = j;
+        if (pts[j].asignacion == null) return i;
+        while (i > desde && pts[j].riesgo - r[i-1] <= 1e-9) {
+            i--;
+            pts[i] = pts[j].conRiesgoMax(r[i]);
+        }
+        return i;
+    }
+
+    private static void correr(ExecutorService ex, List<Callable<Void>> tareas){
+        try {
+            if (ex == null) {
+                for (Callable<Void> t : tareas) t.call();
+            } else {
+                for (Future<Void> f : ex.invokeAll(tareas)) f.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Frontera interrumpida", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException(ee.getCause());
+        } catch (RuntimeException re) {
+            throw re;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Punto resolver(Mercado m, Perfil p, double riesgoMax, OpcionesBusqueda op, Asignacion arranque){
+        Perfil q = p.conRiesgoMax(riesgoMax);
+        BBPortafolio.Resultado res;
+        try {
+            res = BBPortafolio.maximizarRetorno(m, q, op, arranque);
+        } catch (IllegalArgumentException ex) {
+            // la heurística no halló semilla, lo que no prueba que no haya cartera: sin buscar no hay óptimo
+            // probado, y la cota sale de los puntos de mayor riesgo
+            return new Punto(riesgoMax, null, Double.NaN, Double.NaN, Double.POSITIVE_INFINITY, false, 0);
+        }
+        if (res.mejor == null || !valida(m, q, res.mejor))
+            return new Punto(riesgoMax, null, Double.NaN, Double.NaN, res.cotaSuperior, res.optimoProbado, res.nodosVisitados);
+        return new Punto(riesgoMax, res.mejor, res.retorno, res.riesgo, res.cotaSuperior, res.optimoProbado, res.nodosVisitados);
+    }
+
+    private static boolean valida(Mercado m, Perfil p, Asignacion a){
+        try {
+            ValidadorAsignacion.validar(m, p, a);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package optimizacion;
+
+import model.Asignacion;
+
+/** Mejor solución conocida durante la búsqueda (inmutable) */
+final class Incumbente {
+    final Asignacion asignacion;
+    final double retorno;
+    final double riesgo;
+    final double correlacionMedia;
+
+    Incumbente(Asignacion asignacion, double retorno, double riesgo, double correlacionMedia) {
+        this.asignacion = asignacion;
+        this.retorno = retorno;
+        this.riesgo = riesgo;
+        this.correlacionMedia = correlacionMedia;
+    }
+
+    /** Mayor retorno; ante empate, menor correlación media */
+    boolean superaA(Incumbente otro) {
+        if (otro == null) return true;
+        if (retorno > otro.retorno + 1e-12) return true;
+        return Math.abs(retorno - otro.retorno) <= 1e-12
+            && correlacionMedia < otro.correlacionMedia - 1e-12;
+    }
+}
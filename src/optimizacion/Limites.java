@@ -0,0 +1,63 @@
+package optimizacion;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAccumulator;
+
+/**
+ * Plazo y tope de nodos compartidos por todos los hilos de una búsqueda.
+ * Los trabajadores informan nodos en bloques, así el reloj se consulta cada tantos nodos
+ * y no en cada uno. Al cortar, cada nodo de la frontera sin explorar deja su cota en cotaPendiente.
+ */
+final class Limites {
+    private final boolean conPlazo;
+    private final long deadline;        // System.nanoTime()
+    private final long maxNodos;
+    /** Cada cuántos nodos locales se informa y se revisa (potencia de 2) */
+    final int intervalo;
+
+    private final AtomicLong consumidos = new AtomicLong();
+    private final DoubleAccumulator cotaPendiente = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+    private volatile boolean detenido;
+
+    Limites(long plazoNanos, long maxNodos) {
+        this.conPlazo = plazoNanos < Long.MAX_VALUE;
+        this.deadline = conPlazo ? System.nanoTime() + plazoNanos : 0L;
+        this.maxNodos = maxNodos;
+        // bloques chicos con topes chicos, para no pasarse más de ~1/16 del tope
+        this.intervalo = Integer.highestOneBit((int)Math.max(1, Math.min(256, maxNodos / 16)));
+    }
+
+    static Limites de(OpcionesBusqueda op) {
+        long plazo = op.plazo == null ? Long.MAX_VALUE : op.plazo.toNanos();
+        return new Limites(plazo, op.maxNodos);
+    }
+
+    boolean detenido() {
+        return detenido;
+    }
+
+    /** Suma nodos visitados y marca la búsqueda como detenida si se agotó el plazo o el tope */
+    void revisar(long nuevos) {
+        if (consumidos.addAndGet(nuevos) >= maxNodos
+            || (conPlazo && System.nanoTime() - deadline >= 0)) {
+            detenido = true;
+        }
+    }
+
+    /**
+     * Suma los nodos que un trabajador contó después de su último bloque, al terminar. No corta:
+     * el próximo revisar (de cualquier hilo) ya ve el total.
+     */
+    void sumar(long nodos) {
+        consumidos.addAndGet(nodos);
+    }
+
+    /** Registra la cota de un nodo que quedó sin explorar por el corte */
+    void pendiente(double cota) {
+        cotaPendiente.accumulate(cota);
+    }
+
+    double cotaPendiente() {
+        return cotaPendiente.get();
+    }
+}
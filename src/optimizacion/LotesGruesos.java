@@ -0,0 +1,85 @@
+package optimizacion;
+
+import model.*;
+import java.util.*;
+
+/**
+ * Búsqueda con lotes gruesos para presupuestos grandes (OpcionesBusqueda.lotesPorNivel > 0).
+ * Con lotes de montoMin cada activo tiene hasta min(presupuesto, tope)/montoMin hijos y el árbol crece
+ * con el presupuesto. Acá:
+ *  - fase gruesa: cada activo prueba su máximo y los múltiplos de g·montoMin, con g tal que no haya más
+ *    de lotesPorNivel+2 hijos por nivel (los montos siguen siendo múltiplos de montoMin y bajo el tope);
+ *  - refinamiento: g baja a la mitad y se busca de nuevo solo sobre los activos de la mejor cartera,
+ *    con montos a ±g lotes de los suyos, hasta llegar a un lote; cada ronda arranca desde la anterior.
+ * Cada búsqueda tiene hijos por nivel acotados y las rondas son log2(g), así el costo casi no depende
+ * del presupuesto. No es exacto, y redondear el óptimo fino a la grilla gruesa no da una cota (puede
+ * dejar menos de 3 activos o, con correlaciones negativas, subir el riesgo): al final se corre la
+ * búsqueda con lotes de montoMin desde la cartera refinada y con tantos nodos como las rondas anteriores.
+ * Si termina, prueba el óptimo; si no, su cota pendiente (o la de la raíz, si es menor) vale para el
+ * óptimo fino y Resultado.gap es la pérdida máxima posible contra él.
+ * plazo y maxNodos valen para cada búsqueda por separado; las estadísticas son las de la fase gruesa.
+ */
+final class LotesGruesos {
+    private LotesGruesos(){}
+
+    static BBPortafolio.Resultado resolver(Mercado m, Perfil p, OpcionesBusqueda op, Asignacion arranque){
+        int n = m.activos.size();
+        double cabe = Math.min(p.presupuesto, p.maxPorActivo * p.presupuesto);
+        int[] paso = new int[n];
+        boolean grueso = false;
+        for (int i = 0; i < n; i++) {
+            long lotes = (long) Math.floor((cabe + 1e-9) / m.activos.get(i).montoMin);
+            paso[i] = (int) Math.max(1, (lotes + op.lotesPorNivel - 1) / op.lotesPorNivel);
+            grueso |= paso[i] > 1;
+        }
+        if (!grueso) return BBPortafolio.maximizarRetorno(new ProblemaCompilado(m, p, op.presolve), op, arranque);
+
+        ProblemaCompilado pc = new ProblemaCompilado(m, p, op.presolve, null, null, Double.POSITIVE_INFINITY, paso, null);
+        // la cota de la raíz no mira el paso: acota al óptimo con lotes de montoMin
+        double cota = BBPortafolio.boundOptimista(pc, new EstadoBusqueda(pc), 0);
+        BBPortafolio.Resultado r = BBPortafolio.maximizarRetorno(pc, op, arranque);
+        long nodos = r.nodosVisitados;
+        EstadisticasBusqueda est = r.estadisticas;  // las de la fase gruesa
+
+        int g = Integer.MAX_VALUE;
+        while (r.mejor != null && g > 1) {
+            g = 1;
+            for (int i = 0; i < n; i++) {
+                paso[i] = (paso[i] + 1) / 2;
+                g = Math.max(g, paso[i]);
+            }
+            BBPortafolio.Resultado fino = BBPortafolio.maximizarRetorno(
+                new ProblemaCompilado(m, p, op.presolve, null, null, Double.POSITIVE_INFINITY, null, ventanas(m, r.mejor, paso)),
+                op, r.mejor);
+            nodos += fino.nodosVisitados;
+            if (fino.mejor != null && fino.retorno >= r.retorno) r = fino;
+        }
+
+        OpcionesBusqueda acotada = op.copia();
+        acotada.maxNodos = Math.min(op.maxNodos, Math.max(1, nodos));
+        BBPortafolio.Resultado prueba = BBPortafolio.maximizarRetorno(
+            new ProblemaCompilado(m, p, op.presolve), acotada, r.mejor != null ? r.mejor : arranque);
+        nodos += prueba.nodosVisitados;
+        if (prueba.mejor != null && (r.mejor == null || prueba.retorno > r.retorno)) r = prueba;
+        cota = Math.min(cota, prueba.cotaSuperior);
+        boolean probado = prueba.optimoProbado || r.mejor != null && cota <= r.retorno + 1e-12;
+        return new BBPortafolio.Resultado(r.mejor, r.retorno, r.riesgo, nodos, cota, probado,
+                                          est, pc.descartados(), p);
+    }
+
+    // por activo, montos permitidos en lotes (de mayor a menor): x+g, x y x-g para los de la cartera, 0 para el resto
+    private static int[][] ventanas(Mercado m, Asignacion a, int[] paso){
+        int n = m.activos.size();
+        int[][] v = new int[n][];
+        int[] cero = { 0 };
+        Arrays.fill(v, cero);
+        Asignacion.Soporte s = a.soporte(m);
+        for (int t = 0; t < s.k; t++) {
+            int i = s.indices[t], g = paso[i];
+            int x = (int) Math.round(s.montos[t] / m.activos.get(i).montoMin);
+            v[i] = x > g ? new int[]{ x + g, x, x - g } : new int[]{ x + g, x, 0 };
+            if (x == 0) v[i] = new int[]{ g, 0 };
+        }
+        return v;
+    }
+}
@@ -0,0 +1,55 @@
+package optimizacion;
+
+import model.Mercado;
+import validacion.ValidadorMercado;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Mercado vigente de un proceso de larga vida (servidor, lote continuo). Cada Mercado es inmutable:
+ * quien toma la versión vigente la usa entera hasta terminar aunque mientras tanto se publique otra,
+ * y los pedidos que llegan después toman la nueva. Publicar es cambiar una referencia volatile, así
+ * que los lectores nunca ven una versión a medio armar. Los escritores se serializan entre sí.
+ */
+public final class MercadoVigente {
+
+    /** Un Mercado y su número de versión (crece de a uno con cada cambio publicado) */
+    public static final class Version {
+        public final long numero;
+        public final Mercado mercado;
+
+        Version(long numero, Mercado mercado){ this.numero=numero; this.mercado=mercado; }
+    }
+
+    private volatile Version actual;
+
+    /** inicial se valida entero */
+    public MercadoVigente(Mercado inicial){
+        ValidadorMercado.validar(inicial);
+        this.actual = new Version(1, inicial);
+    }
+
+    public Version actual(){ return actual; }
+
+    public Mercado mercado(){ return actual.mercado; }
+
+    /**
+     * Arma los cambios sobre la versión vigente (Mercado.Delta), valida solo lo que cambió y publica
+     * la versión nueva. Si la validación falla no se publica nada.
+     */
+    public synchronized Version aplicar(Consumer<Mercado.Delta> cambios){
+        Objects.requireNonNull(cambios);
+        Version v = actual;
+        Mercado.Delta d = v.mercado.cambios();
+        cambios.accept(d);
+        Mercado nuevo = d.aplicar();
+        ValidadorMercado.validarCambios(v.mercado, nuevo);
+        return actual = new Version(v.numero + 1, nuevo);
+    }
+
+    /** Publica un mercado recargado entero (p. ej. de un mercado.json nuevo); se valida completo */
+    public synchronized Version reemplazar(Mercado m){
+        ValidadorMercado.validar(m);
+        return actual = new Version(actual.numero + 1, m);
+    }
+}
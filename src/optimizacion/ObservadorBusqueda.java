@@ -0,0 +1,20 @@
+package optimizacion;
+
+/** Callbacks opcionales del motor de búsqueda. Todos los métodos tienen implementación vacía. */
+public interface ObservadorBusqueda {
+
+    /**
+     * Gap probado en este momento: ninguna cartera supera {@code cota}.
+     * Se invoca cada vez que la cota global o el incumbente cambian.
+     */
+    default void gap(double incumbente, double cota) {}
+
+    /**
+     * El incumbente mejoró a {@code retorno}, {@code segundos} después de empezar.
+     * Con varios hilos se invoca desde el hilo que encontró la cartera.
+     */
+    default void mejora(double retorno, double segundos) {}
+
+    /** Fin de la búsqueda; solo si OpcionesBusqueda.estadisticas está activo */
+    default void estadisticas(EstadisticasBusqueda e) {}
+}
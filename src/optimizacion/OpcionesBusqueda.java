@@ -0,0 +1,76 @@
+package optimizacion;
+
+import java.time.Duration;
+
+/** Parámetros del motor de Branch & Bound. Los valores por defecto reproducen la búsqueda secuencial. */
+public final class OpcionesBusqueda {
+
+    public enum Modo {
+        /** Backtracking en profundidad (secuencial o paralelo según hilos) */
+        PROFUNDIDAD,
+        /** Lista de nodos abiertos ordenada por cota; si excede el presupuesto de memoria, bucea en profundidad */
+        MEJOR_PRIMERO
+    }
+
+    public Modo modo = Modo.PROFUNDIDAD;
+    /** Hilos de trabajo; 1 = búsqueda secuencial en el hilo llamador */
+    public int hilos = 1;
+    /** En modo paralelo, cada subárbol por encima de esta profundidad es una tarea ForkJoin */
+    public int profundidadParalela = 8;
+    /** En MEJOR_PRIMERO, máximo de nodos abiertos antes de pasar a buceo en profundidad */
+    public int maxNodosAbiertos = 200_000;
+    /** Plazo de reloj para la búsqueda (null = sin plazo); al vencer se devuelve la mejor cartera hallada */
+    public Duration plazo = null;
+    /** Tope de nodos visitados (aproximado en bloques cuando hay varios hilos) */
+    public long maxNodos = Long.MAX_VALUE;
+    /** Opcional: recibe la cota global y el incumbente a medida que se ajustan */
+    public ObservadorBusqueda observador = null;
+    /** Contar podas por motivo, nodos por profundidad y mejoras (Resultado.estadisticas); apagado cuesta un chequeo de null */
+    public boolean estadisticas = false;
+    /** Sacar del árbol los activos inviables para el perfil o dominados antes de buscar (exacto, ver Presolve) */
+    public boolean presolve = true;
+    /** Entradas de la tabla de transposición por hilo (0 = sin tabla); cada una ocupa unos 8·(3+tipos+sectores) bytes */
+    public int tablaTransposicion = 0;
+    /** Plazo de la búsqueda local multi-arranque que arma el incumbente inicial (null = una pasada sobre el Greedy) */
+    public Duration busquedaLocal = null;
+    /**
+     * Máximo de hijos por nivel (0 = todos los lotes de montoMin): si un activo admite más, se busca con
+     * lotes gruesos y después se refina (ver LotesGruesos); Resultado.gap es la pérdida máxima posible
+     */
+    public int lotesPorNivel = 0;
+
+    /** Copia para ajustar una búsqueda interna sin tocar las opciones del llamador */
+    OpcionesBusqueda copia() {
+        OpcionesBusqueda o = new OpcionesBusqueda();
+        o.modo = modo;
+        o.hilos = hilos;
+        o.profundidadParalela = profundidadParalela;
+        o.maxNodosAbiertos = maxNodosAbiertos;
+        o.plazo = plazo;
+        o.maxNodos = maxNodos;
+        o.observador = observador;
+        o.estadisticas = estadisticas;
+        o.presolve = presolve;
+        o.tablaTransposicion = tablaTransposicion;
+        o.busquedaLocal = busquedaLocal;
+        o.lotesPorNivel = lotesPorNivel;
+        return o;
+    }
+
+    public static OpcionesBusqueda secuencial() {
+        return new OpcionesBusqueda();
+    }
+
+    public static OpcionesBusqueda paralela(int hilos) {
+        OpcionesBusqueda o = new OpcionesBusqueda();
+        o.hilos = hilos;
+        return o;
+    }
+
+    public static OpcionesBusqueda mejorPrimero(int maxNodosAbiertos) {
+        OpcionesBusqueda o = new OpcionesBusqueda();
+        o.modo = Modo.MEJOR_PRIMERO;
+        o.maxNodosAbiertos = maxNodosAbiertos;
+        return o;
+    }
+}
@@ -0,0 +1,95 @@
+package optimizacion;
+
+import model.*;
+import java.util.*;
+
+/**
+ * Presolve exacto: descarta activos antes de la búsqueda para que no ocupen un nivel del árbol.
+ *
+ * Inviables: su montoMin no entra en el presupuesto, en el tope por activo o en el tope de su
+ * tipo o sector, así que solo pueden tomar monto 0.
+ *
+ * Dominados: j está dominado por i si comparten tipo y sector, montoMin_j es múltiplo de montoMin_i,
+ * retorno_i > retorno_j y la fila de covarianza de i no supera a la de j (cov(i,i) <= cov(j,j) y
+ * cov(i,l) <= cov(j,l) para todo otro l). En una cartera con j y sin i, pasar el monto de j a i
+ * respeta presupuesto, topes y mínimos, no sube el riesgo y sube el retorno. Una cartera tiene a lo
+ * sumo 6 activos, así que si j tiene 6 dominadores siempre queda uno afuera: j nunca está en el óptimo.
+ * Se descarta de menor a mayor retorno, de modo que los dominadores de j siguen presentes cuando se decide j.
+ * Las filas de covarianza solo se comparan sobre los activos que siguen en juego, y no se comparan si el
+ * riesgo no puede activarse: sigma de una cartera <= sum w_l sigma_l <= max sigma_l <= riesgoMax.
+ */
+final class Presolve {
+    private Presolve(){}
+
+    private static final int MAX_ACTIVOS = 6;
+
+    /** Activos descartados por índice y cuántos por cada motivo */
+    static final class Reduccion {
+        final boolean[] descartado;
+        final int inviables, dominados;
+        Reduccion(boolean[] descartado, int inviables, int dominados){
+            this.descartado = descartado; this.inviables = inviables; this.dominados = dominados;
+        }
+    }
+
+    static Reduccion reducir(ProblemaCompilado pc) {
+        int n = pc.n;
+        boolean[] fuera = new boolean[n];
+        int inviables = 0;
+        double cabe = Math.min(pc.presupuesto, pc.topeActivo);
+        for (int i = 0; i < n; i++) {
+            // mismo criterio que la búsqueda: qmax = 0 o cualquier monto excede el tope de tipo/sector
+            if (Math.floor(cabe / pc.montoMin[i]) < 1
+                || pc.montoMin[i] > pc.limTipo[pc.tipo[i]] + 1e-9
+                || pc.montoMin[i] > pc.limSector[pc.sector[i]] + 1e-9) {
+                fuera[i] = true;
+                inviables++;
+            }
+        }
+
+        // candidatos agrupados por (tipo, sector), cada grupo por retorno asc
+        Map<Long, List<Integer>> grupos = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (fuera[i]) continue;
+            long g = ((long) pc.tipo[i] << 32) | pc.sector[i];
+            grupos.computeIfAbsent(g, x -> new ArrayList<>()).add(i);
+        }
+
+        double maxSigma = 0.0;
+        for (int i = 0; i < n; i++) if (!fuera[i]) maxSigma = Math.max(maxSigma, pc.sigma[i]);
+        MatrizCorrelacion cov = maxSigma <= pc.p.riesgoMax ? null : pc.m.covarianza();
+        int dominados = 0;
+        for (List<Integer> g : grupos.values()) {
+            if (g.size() <= MAX_ACTIVOS) continue;
+            g.sort(Comparator.comparingDouble(i -> pc.retorno[i]));
+            for (int a = 0; a < g.size(); a++) {
+                int j = g.get(a);
+                int cuenta = 0;
+                // solo los de mayor retorno pueden dominar a j; ninguno de ellos se descartó todavía
+                for (int b = g.size() - 1; b > a && cuenta < MAX_ACTIVOS; b--) {
+                    if (domina(pc, cov, fuera, g.get(b), j)) cuenta++;
+                }
+                if (cuenta >= MAX_ACTIVOS) {
+                    fuera[j] = true;
+                    dominados++;
+                }
+            }
+        }
+        return new Reduccion(fuera, inviables, dominados);
+    }
+
+    // i domina a j (mismo tipo y sector ya garantizado por el grupo); cov null = el riesgo no se activa
+    private static boolean domina(ProblemaCompilado pc, MatrizCorrelacion cov, boolean[] fuera, int i, int j) {
+        // mejora estricta aun con el menor monto posible, para que el desempate por correlación no cuente
+        if ((pc.retorno[i] - pc.retorno[j]) * pc.montoMin[j] / pc.presupuesto <= 1e-10) return false;
+        double r = pc.montoMin[j] / pc.montoMin[i];
+        if (r < 1.0 || Math.abs(r - Math.rint(r)) > 1e-9) return false;
+        if (cov == null) return true;
+        if (cov.get(i, i) > cov.get(j, j)) return false;
+        for (int l = 0; l < pc.n; l++) {
+            if (l == i || l == j || fuera[l]) continue;
+            if (cov.get(i, l) > cov.get(j, l)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,252 @@
+package optimizacion;
+
+import model.*;
+import java.util.*;
+
+/**
+ * Representación compilada de (Mercado, Perfil) para el motor de búsqueda:
+ * todo indexado por posición de activo, con ids enteros para tipo y sector
+ * y límites ya pasados a moneda. Se arma una vez por búsqueda y es inmutable.
+ */
+public final class ProblemaCompilado {
+    public final Mercado m;
+    public final Perfil p;
+    public final int n;
+
+    public final double presupuesto;
+    public final double topeActivo;          // maxPorActivo * presupuesto
+    public final double retornoRequerido;    // max(retornoMin, retornoMinDeseado)
+
+    // por índice de activo (mismo orden que m.activos)
+    public final double[] retorno, sigma, montoMin;
+    public final int[] tipo, sector;
+
+    // por id de categoría
+    public final String[] nombresTipo, nombresSector;
+    public final double[] limTipo, limSector;  // en moneda
+
+    /** Orden de exploración: orden[k] = índice del activo decidido en la profundidad k */
+    public final int[] orden;
+    /** Profundidad del árbol: activos que quedan después del presolve (n sin presolve) */
+    public final int niveles;
+    /** Profundidad a la que se decide cada activo (inversa de orden); -1 si el presolve lo descartó */
+    public final int[] posicion;
+    /** Índices de activo por retorno desc (retorno por unidad de capital), para la cota; sin los descartados */
+    public final int[] ordenRetorno;
+
+    /** Lotes a probar primero en cada profundidad (arranque en caliente); null = de qmax a 0 */
+    final int[] preferido;
+
+    /**
+     * Lotes gruesos (ver LotesGruesos): por profundidad, paso en lotes de montoMin entre montos
+     * probados (null = de a un lote) o montos permitidos, en lotes y de mayor a menor (null = todos)
+     */
+    final int[] paso;
+    final int[][] ventana;
+
+    /** Re-optimización: activos cambiados que siguen en el árbol y techo de las carteras sin ellos (+inf = sin prueba) */
+    final int[] cambiados;
+    final double techoSinCambios;
+
+    /** Activos descartados por el presolve: inviables para el perfil y dominados */
+    public final int descartadosInviables, descartadosDominados;
+
+    public ProblemaCompilado(Mercado m, Perfil p) {
+        this(m, p, false);
+    }
+
+    /** Con presolve, los activos inviables o dominados no ocupan un nivel del árbol (ver Presolve) */
+    public ProblemaCompilado(Mercado m, Perfil p, boolean presolve) {
+        this(m, p, presolve, null);
+    }
+
+    /**
+     * montosPreferidos (por índice de activo, null = sin preferencia): en cada nivel se prueba primero
+     * la cantidad de lotes más cercana a ese monto y después el resto de qmax a 0 (ver {@link #rama}).
+     * Solo cambia el orden de visita de los hijos, no cuáles se visitan.
+     */
+    public ProblemaCompilado(Mercado m, Perfil p, boolean presolve, double[] montosPreferidos) {
+        this(m, p, presolve, montosPreferidos, null, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Con la prueba de una corrida anterior (mismo perfil, mercado que solo difiere en los activos
+     * marcados en cambiado): una cartera sin activos cambiados tiene el mismo retorno y riesgo que
+     * antes, así que no supera techoSinCambios (el óptimo probado entonces; -inf si ese óptimo ya
+     * no tenía activos cambiados y sigue disponible como incumbente). Ver BBPortafolio.boundOptimista.
+     */
+    ProblemaCompilado(Mercado m, Perfil p, boolean presolve, double[] montosPreferidos,
+                      boolean[] cambiado, double techoSinCambios) {
+        this(m, p, presolve, montosPreferidos, cambiado, techoSinCambios, null, null);
+    }
+
+    /**
+     * Con lotes gruesos: pasoPorActivo[i] lotes de montoMin entre montos probados del activo i, o
+     * ventanaPorActivo[i] = montos permitidos en lotes (un activo con ventana {0} no ocupa nivel).
+     * Cualquiera de los dos null = de a un lote.
+     */
+    ProblemaCompilado(Mercado m, Perfil p, boolean presolve, double[] montosPreferidos,
+                      boolean[] cambiado, double techoSinCambios, int[] pasoPorActivo, int[][] ventanaPorActivo) {
+        this.m = m;
+        this.p = p;
+        this.n = m.activos.size();
+        this.presupuesto = p.presupuesto;
+        this.topeActivo = p.maxPorActivo * p.presupuesto;
+        this.retornoRequerido = Math.max(p.retornoMin, p.retornoMinDeseado);
+
+        retorno = new double[n];
+        sigma = new double[n];
+        montoMin = new double[n];
+        tipo = new int[n];
+        sector = new int[n];
+        Map<String,Integer> idTipo = new LinkedHashMap<>();
+        Map<String,Integer> idSector = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            Activo a = m.activos.get(i);
+            retorno[i] = a.retorno;
+            sigma[i] = a.sigma;
+            montoMin[i] = a.montoMin;
+            tipo[i] = idTipo.computeIfAbsent(a.tipo, t -> idTipo.size());
+            sector[i] = idSector.computeIfAbsent(a.sector, s -> idSector.size());
+        }
+
+        nombresTipo = idTipo.keySet().toArray(new String[0]);
+        nombresSector = idSector.keySet().toArray(new String[0]);
+        limTipo = new double[nombresTipo.length];
+        limSector = new double[nombresSector.length];
+        for (int t = 0; t < limTipo.length; t++)
+            limTipo[t] = p.maxPorTipo.getOrDefault(nombresTipo[t], 1.0) * p.presupuesto;
+        for (int s = 0; s < limSector.length; s++)
+            limSector[s] = p.maxPorSector.getOrDefault(nombresSector[s], 1.0) * p.presupuesto;
+
+        boolean[] fuera = new boolean[n];
+        if (presolve) {
+            Presolve.Reduccion r = Presolve.reducir(this);
+            fuera = r.descartado;
+            descartadosInviables = r.inviables;
+            descartadosDominados = r.dominados;
+        } else {
+            descartadosInviables = 0;
+            descartadosDominados = 0;
+        }
+        if (ventanaPorActivo != null) {
+            fuera = fuera.clone();
+            for (int i = 0; i < n; i++) {
+                int[] v = ventanaPorActivo[i];
+                if (v.length == 1 && v[0] == 0) fuera[i] = true;
+            }
+        }
+        int quedan = 0;
+        for (boolean f : fuera) if (!f) quedan++;
+        niveles = quedan;
+
+        // Orden de exploración por score (ret/sigma) desc
+        Integer[] ord = quedan(fuera);
+        Arrays.sort(ord, (i, j) -> Double.compare(score(j), score(i)));
+        orden = new int[niveles];
+        for (int k = 0; k < niveles; k++) orden[k] = ord[k];
+        posicion = new int[n];
+        Arrays.fill(posicion, -1);
+        for (int k = 0; k < niveles; k++) posicion[orden[k]] = k;
+
+        if (montosPreferidos != null) {
+            preferido = new int[niveles];
+            for (int k = 0; k < niveles; k++) {
+                int i = orden[k];
+                preferido[k] = (int) Math.floor((montosPreferidos[i] + 1e-9) / montoMin[i]);
+            }
+        } else {
+            preferido = null;
+        }
+        if (pasoPorActivo != null) {
+            paso = new int[niveles];
+            for (int k = 0; k < niveles; k++) paso[k] = Math.max(1, pasoPorActivo[orden[k]]);
+        } else {
+            paso = null;
+        }
+        if (ventanaPorActivo != null) {
+            ventana = new int[niveles][];
+            for (int k = 0; k < niveles; k++) ventana[k] = ventanaPorActivo[orden[k]];
+        } else {
+            ventana = null;
+        }
+
+        int c = 0;
+        int[] cam = new int[cambiado == null ? 0 : n];
+        if (cambiado != null) {
+            for (int i = 0; i < n; i++) if (cambiado[i] && posicion[i] >= 0) cam[c++] = i;
+        }
+        this.cambiados = Arrays.copyOf(cam, c);
+        this.techoSinCambios = cambiado == null ? Double.POSITIVE_INFINITY : techoSinCambios;
+
+        Integer[] porRet = quedan(fuera);
+        Arrays.sort(porRet, (i, j) -> Double.compare(retorno[j], retorno[i]));
+        ordenRetorno = new int[niveles];
+        for (int k = 0; k < niveles; k++) ordenRetorno[k] = porRet[k];
+    }
+
+    private Integer[] quedan(boolean[] fuera) {
+        Integer[] v = new Integer[niveles];
+        int k = 0;
+        for (int i = 0; i < n; i++) if (!fuera[i]) v[k++] = i;
+        return v;
+    }
+
+    /** Cantidad de ramas en la profundidad k cuando caben hasta qmax lotes */
+    int ramas(int k, int qmax) {
+        if (ventana != null) {
+            int c = 0;
+            for (int v : ventana[k]) if (v <= qmax) c++;
+            return c;
+        }
+        int g = paso == null ? 1 : paso[k];
+        return qmax / g + 1 + (qmax % g != 0 ? 1 : 0);
+    }
+
+    /**
+     * j-ésima rama (j = 0..ramas-1) a explorar en la profundidad k, en lotes: con ventana, sus montos
+     * que caben; con paso g, qmax y después los múltiplos de g de mayor a menor; si no, la preferida
+     * primero y después de qmax a 0
+     */
+    int rama(int k, int qmax, int j) {
+        if (ventana != null) {
+            for (int v : ventana[k]) if (v <= qmax && j-- == 0) return v;
+            throw new IllegalStateException("Rama fuera de la ventana");
+        }
+        if (paso != null && paso[k] > 1) {
+            int g = paso[k];
+            if (qmax % g == 0) return qmax - j * g;
+            return j == 0 ? qmax : (qmax / g - (j - 1)) * g;
+        }
+        int pref = preferido == null ? -1 : preferido[k];
+        if (pref < 0 || pref > qmax) return qmax - j;
+        if (j == 0) return pref;
+        int q = qmax - (j - 1);
+        return q <= pref ? q - 1 : q;
+    }
+
+    /** true si hay una prueba anterior que reutilizar y el camino todavía no tomó ningún activo cambiado */
+    boolean sinCambiosTomados(EstadoBusqueda e) {
+        if (techoSinCambios == Double.POSITIVE_INFINITY) return false;
+        for (int i : cambiados) if (e.montos[i] > 0.0) return false;
+        return true;
+    }
+
+    public int descartados() {
+        return descartadosInviables + descartadosDominados;
+    }
+
+    private double score(int i) {
+        return sigma[i] > 1e-12 ? retorno[i] / sigma[i] : retorno[i];
+    }
+
+    /** Arma la Asignacion con los montos no nulos (por ticker del mercado original), en orden de exploración */
+    public Asignacion aAsignacion(double[] montos) {
+        LinkedHashMap<String,Double> asig = new LinkedHashMap<>();
+        for (int k = 0; k < niveles; k++) {
+            int i = orden[k];
+            if (montos[i] > 0.0) asig.put(m.activos.get(i).ticker, montos[i]);
+        }
+        return new Asignacion(asig);
+    }
+}
@@ -0,0 +1,125 @@
+package optimizacion;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Tabla de transposición del backtracking: para un estado (profundidad, activos distintos, presupuesto
+ * restante y uso por tipo/sector) guarda una cota ya probada de lo que puede sumar la completación.
+ *
+ * Dos estados con la misma clave tienen las mismas completaciones si no se mira el riesgo, así que solo
+ * se guarda la cota de subárboles terminados sin ningún rechazo por riesgo (poda tentativa o validador):
+ * max(mejor hoja, incumbente, retorno requerido) - retorno parcial. Otro estado equivalente cuyo retorno
+ * parcial más esa cota no alcanza al incumbente se salta entero.
+ *
+ * Tamaño fijo (cubetas de 2 entradas, se reemplaza la de subárbol más chico), así la memoria no depende
+ * de la búsqueda. Una tabla por hilo, sin sincronización.
+ */
+final class TablaTransposicion {
+    /** Holgura contra el redondeo entre retornos parciales acumulados por caminos distintos */
+    static final double MARGEN = 1e-9;
+
+    private final int ancho;          // longs por clave
+    private final int mascara;        // cubetas - 1
+    private final long[] claves;      // [entrada * ancho ..]
+    private final double[] cotas;
+    private final long[] costos;      // nodos del subárbol que probó la cota; 0 = libre
+    private final long[][] porProfundidad;  // clave del nodo abierto en cada profundidad
+
+    long consultas, aciertos, podas;
+
+    TablaTransposicion(int entradas, ProblemaCompilado pc) {
+        this.ancho = 3 + pc.limTipo.length + pc.limSector.length;
+        int cubetas = Integer.highestOneBit(Math.max(2, entradas / 2));
+        this.mascara = cubetas - 1;
+        this.claves = new long[2 * cubetas * ancho];
+        this.cotas = new double[2 * cubetas];
+        this.costos = new long[2 * cubetas];
+        this.porProfundidad = new long[pc.niveles + 1][ancho];
+    }
+
+    /** Arma la clave del estado en la profundidad k; devuelve la cota guardada o NaN */
+    double buscar(int k, EstadoBusqueda e) {
+        long[] c = porProfundidad[k];
+        c[0] = k;
+        c[1] = e.distintos;
+        c[2] = Double.doubleToLongBits(e.presupuestoRest);
+        int p = 3;
+        for (double v : e.usoTipo) c[p++] = Double.doubleToLongBits(v);
+        for (double v : e.usoSector) c[p++] = Double.doubleToLongBits(v);
+
+        consultas++;
+        int b = 2 * cubeta(c);
+        for (int s = b; s < b + 2; s++) {
+            if (costos[s] != 0 && igual(s, c)) {
+                aciertos++;
+                return cotas[s];
+            }
+        }
+        return Double.NaN;
+    }
+
+    /** Guarda la cota de la clave armada por el último buscar(k, ..) */
+    void guardar(int k, double cota, long nodos) {
+        long[] c = porProfundidad[k];
+        int b = 2 * cubeta(c);
+        // la misma clave se pisa; si no, una libre o la de subárbol más chico
+        int s;
+        if (costos[b] != 0 && igual(b, c)) s = b;
+        else if (costos[b + 1] != 0 && igual(b + 1, c)) s = b + 1;
+        else if (costos[b] == 0) s = b;
+        else if (costos[b + 1] == 0) s = b + 1;
+        else s = costos[b + 1] < costos[b] ? b + 1 : b;
+        System.arraycopy(c, 0, claves, s * ancho, ancho);
+        cotas[s] = cota;
+        costos[s] = Math.max(1, nodos);
+    }
+
+    private int cubeta(long[] c) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (long v : c) {
+            h ^= v;
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        return (int) h & mascara;
+    }
+
+    private boolean igual(int s, long[] c) {
+        int o = s * ancho;
+        for (int i = 0; i < ancho; i++) if (claves[o + i] != c[i]) return false;
+        return true;
+    }
+
+    /** Una tabla por hilo de trabajo; al final se suman los contadores */
+    static final class PorHilo {
+        private final int entradas;
+        private final ProblemaCompilado pc;
+        private final ConcurrentLinkedQueue<TablaTransposicion> todas = new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<TablaTransposicion> local = ThreadLocal.withInitial(this::nueva);
+
+        PorHilo(int entradas, ProblemaCompilado pc) {
+            this.entradas = entradas;
+            this.pc = pc;
+        }
+
+        TablaTransposicion delHilo() { return local.get(); }
+
+        private TablaTransposicion nueva() {
+            TablaTransposicion t = new TablaTransposicion(entradas, pc);
+            todas.add(t);
+            return t;
+        }
+
+        /** consultas, aciertos y podas de todas las tablas; libera la del hilo llamador */
+        long[] cerrar() {
+            local.remove();
+            long[] r = new long[3];
+            for (TablaTransposicion t : todas) {
+                r[0] += t.consultas;
+                r[1] += t.aciertos;
+                r[2] += t.podas;
+            }
+            return r;
+        }
+    }
+}
@@ -3,8 +3,22 @@ package tools;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import com.google.gson.*;
-
+import com.google.gson.stream.JsonWriter;
+import io.SnapshotMercado;
+import model.Activo;
+
+/**
+ * Convierte activos.csv + correlaciones.csv al mercado.json que lee la App.
+ *
+ * Modo streaming (para matrices de miles de activos):
+ *   ConvertCsvToJson --stream activos.csv correlaciones.csv salida.json|salida.bin [float]
+ * Lee las correlaciones línea por línea, parsea bloques de filas en paralelo y escribe a medida que
+ * avanza, así la memoria no depende del tamaño del universo. Con extensión .bin escribe el snapshot
+ * binario de io.SnapshotMercado (con "float", la matriz en float); en todas las salidas las
+ * correlaciones quedan redondeadas a 6 decimales, como en el modo normal.
+ */
 public class ConvertCsvToJson {
 
     // Ajustá las rutas si tus archivos están en otra carpeta:
@@ -12,8 +26,20 @@ private static final String RUTA_ACTIVOS = "activos.csv";
 private static final String RUTA_CORR    = "correlaciones.csv";
 private static final String RUTA_SALIDA  = "data/mercado.json";
 
+    // valores por bloque de filas que se parsea en un hilo (~8 MB de doubles)
+    private static final int VALORES_POR_BLOQUE = 1 << 20;
+
     public static void main(String[] args) {
         try {
+            if (args.length > 0 && args[0].equals("--stream")) {
+                String inAct  = args.length > 1 ? args[1] : RUTA_ACTIVOS;
+                String inCorr = args.length > 2 ? args[2] : RUTA_CORR;
+                String out    = args.length > 3 ? args[3] : RUTA_SALIDA;
+                boolean simple = args.length > 4 && args[4].equalsIgnoreCase("float");
+                convertirStreaming(inAct, inCorr, out, simple);
+                return;
+            }
+
             // Si pasás las rutas por argumentos, se usan esas:
             String inAct  = args.length > 0 ? args[0] : RUTA_ACTIVOS;
             String inCorr = args.length > 1 ? args[1] : RUTA_CORR;
@@ -83,6 +109,190 @@ private static final String RUTA_SALIDA  = "data/mercado.json";
         }
     }
 
+    // ---------- Modo streaming ----------
+
+    private static void convertirStreaming(String inAct, String inCorr, String out, boolean simple) throws Exception {
+        long t0 = System.nanoTime();
+        Map<String,Activo> porTicker = leerActivosStreaming(inAct);
+
+        try (BufferedReader in = new BufferedReader(Files.newBufferedReader(Path.of(inCorr)), 1 << 16)) {
+            String cab = in.readLine();
+            if (cab == null) throw new IllegalArgumentException("correlaciones CSV vacío");
+            String[] header = splitCsv(cab);
+            List<String> tickers = new ArrayList<>();
+            for (int i = 1; i < header.length; i++) tickers.add(header[i].trim());
+            int n = tickers.size();
+
+            // Alineamos activos al orden de la matriz (por tickers de encabezados)
+            List<Activo> activos = new ArrayList<>(n);
+            for (String t : tickers) {
+                Activo a = porTicker.get(t);
+                if (a == null)
+                    throw new IllegalArgumentException("Ticker en correlaciones no encontrado en activos: " + t);
+                activos.add(a);
+            }
+
+            Path outPath = Path.of(out);
+            if (outPath.getParent() != null) Files.createDirectories(outPath.getParent());
+            int hilos = Runtime.getRuntime().availableProcessors();
+            int filasPorBloque = Math.max(1, VALORES_POR_BLOQUE / n);
+            ExecutorService ex = Executors.newFixedThreadPool(hilos);
+
+            try (Salida sal = out.endsWith(".bin") ? new SalidaSnapshot(activos, outPath, simple)
+                                                   : new SalidaJson(activos, outPath)) {
+                // bloques en vuelo acotados y consumidos en orden: la salida respeta el orden de filas
+                ArrayDeque<Future<double[][]>> enVuelo = new ArrayDeque<>();
+                int leidas = 0, escritas = 0;
+                List<String> bloque = new ArrayList<>(filasPorBloque);
+                String linea;
+                while ((linea = in.readLine()) != null) {
+                    if (linea.isBlank()) continue;
+                    bloque.add(linea);
+                    if (bloque.size() == filasPorBloque) {
+                        enVuelo.add(ex.submit(parsearBloque(bloque, leidas, tickers)));
+                        leidas += bloque.size();
+                        bloque = new ArrayList<>(filasPorBloque);
+                        while (enVuelo.size() >= 2 * hilos) escritas = volcar(enVuelo.poll(), sal, escritas, n);
+                    }
+                }
+                if (!bloque.isEmpty()) enVuelo.add(ex.submit(parsearBloque(bloque, leidas, tickers)));
+                while (!enVuelo.isEmpty()) escritas = volcar(enVuelo.poll(), sal, escritas, n);
+                if (escritas != n)
+                    throw new IllegalArgumentException("correlaciones CSV con " + escritas + " filas, se esperaban " + n);
+            } finally {
+                ex.shutdownNow();
+            }
+
+            System.out.println("OK -> " + outPath.toAbsolutePath());
+            System.out.println("Activos: " + n + "  (" + hilos + " hilos, " + filasPorBloque + " filas por bloque)");
+            System.out.println("Matriz:  " + n + " x " + n);
+            System.out.printf("Tiempo:  %.1f s%n", (System.nanoTime() - t0) / 1e9);
+        }
+    }
+
+    private static Map<String,Activo> leerActivosStreaming(String ruta) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(Path.of(ruta))) {
+            String cab = in.readLine();
+            if (cab == null) throw new IllegalArgumentException("CSV vacío: " + ruta);
+            String[] headers = splitCsv(cab);
+            Map<String,Integer> pos = new LinkedHashMap<>();
+            for (int j = 0; j < headers.length; j++) pos.putIfAbsent(headers[j].trim(), j);
+            Map<String,String> col = mapearColumnas(pos.keySet());
+
+            Map<String,Activo> porTicker = new HashMap<>();
+            String linea;
+            while ((linea = in.readLine()) != null) {
+                if (linea.isBlank()) continue;
+                String[] v = splitCsv(linea);
+                String ticker = campo(v, pos, col.get("ticker")).trim();
+                Activo a = new Activo(ticker,
+                        campo(v, pos, col.get("tipo")).trim(),
+                        campo(v, pos, col.get("sector")).trim(),
+                        toDecimal(campo(v, pos, col.get("retorno"))),
+                        toDecimal(campo(v, pos, col.get("sigma"))),
+                        Double.parseDouble(campo(v, pos, col.get("montoMin")).trim()));
+                if (porTicker.put(ticker, a) != null)
+                    throw new IllegalArgumentException("Ticker duplicado en activos: " + ticker);
+            }
+            return porTicker;
+        }
+    }
+
+    private static String campo(String[] valores, Map<String,Integer> pos, String columna) {
+        int j = pos.get(columna);
+        if (j >= valores.length) throw new IllegalArgumentException("Falta columna requerida: " + columna);
+        return valores[j];
+    }
+
+    private static Callable<double[][]> parsearBloque(List<String> lineas, int primera, List<String> tickers) {
+        return () -> {
+            int n = tickers.size();
+            double[][] filas = new double[lineas.size()][n];
+            for (int k = 0; k < lineas.size(); k++) {
+                int i = primera + k;
+                String[] parts = splitCsv(lineas.get(k));
+                if (parts.length < n+1) throw new IllegalArgumentException("Fila de correlaciones con menos columnas de las esperadas en línea " + (i+2));
+                String rowTicker = parts[0].trim();
+                if (i >= n || !rowTicker.equals(tickers.get(i)))
+                    throw new IllegalArgumentException("El orden de fila no coincide con encabezados: " + rowTicker + " vs " + (i < n ? tickers.get(i) : "(sobra)"));
+                for (int j = 0; j < n; j++) filas[k][j] = Double.parseDouble(parts[j+1].trim().replace(",","."));
+                filas[k][i] = 1.0;
+            }
+            return filas;
+        };
+    }
+
+    private static int volcar(Future<double[][]> bloque, Salida sal, int escritas, int n) throws Exception {
+        double[][] filas;
+        try {
+            filas = bloque.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+        for (double[] f : filas) {
+            if (escritas == n) throw new IllegalArgumentException("correlaciones CSV con más filas que activos");
+            sal.fila(escritas++, f);
+        }
+        return escritas;
+    }
+
+    private interface Salida extends Closeable {
+        void fila(int i, double[] fila) throws IOException;
+    }
+
+    /** mercado.json escrito incrementalmente, mismo contenido que el modo normal (sin pretty print) */
+    private static final class SalidaJson implements Salida {
+        private final JsonWriter w;
+
+        SalidaJson(List<Activo> activos, Path out) throws IOException {
+            w = new JsonWriter(new BufferedWriter(Files.newBufferedWriter(out), 1 << 16));
+            w.beginObject();
+            w.name("activos").beginArray();
+            for (Activo a : activos) {
+                w.beginObject()
+                 .name("ticker").value(a.ticker)
+                 .name("tipo").value(a.tipo)
+                 .name("sector").value(a.sector)
+                 .name("retorno").value(a.retorno)
+                 .name("sigma").value(a.sigma)
+                 .name("montoMin").value(a.montoMin)
+                 .endObject();
+            }
+            w.endArray();
+            w.name("correlaciones").beginArray();
+        }
+
+        public void fila(int i, double[] fila) throws IOException {
+            w.beginArray();
+            for (double v : fila) w.value(redondear(v));
+            w.endArray();
+        }
+
+        public void close() throws IOException {
+            try {
+                w.endArray();
+                w.endObject();
+            } finally {
+                w.close();
+            }
+        }
+    }
+
+    private static final class SalidaSnapshot implements Salida {
+        private final SnapshotMercado.Escritor w;
+
+        SalidaSnapshot(List<Activo> activos, Path out, boolean simple) throws IOException {
+            w = new SnapshotMercado.Escritor(activos, out, simple);
+        }
+
+        public void fila(int i, double[] fila) throws IOException {
+            for (int j = 0; j < fila.length; j++) fila[j] = redondear(fila[j]);
+            w.fila(i, fila);
+        }
+        public void close() throws IOException { w.close(); }
+    }
+
     // ---------- Utilidades ----------
 
     private static String req(Map<String,String> row, String key) {
@@ -177,11 +387,16 @@ private static Map<String,String> mapearColumnas(Set<String> cols) {
         return line.split(";", -1).length > 1 ? line.split(";", -1) : line.split(",", -1);
     }
 
+    /** Correlación a 6 decimales: lo que escribe cada salida, JSON o snapshot */
+    private static double redondear(double v) {
+        return Math.round(v*1_000_000d)/1_000_000d;
+    }
+
     private static List<List<Double>> toList2D(double[][] a) {
         List<List<Double>> out = new ArrayList<>();
         for (double[] row : a) {
             List<Double> r = new ArrayList<>(row.length);
-            for (double v : row) r.add(Math.round(v*1_000_000d)/1_000_000d);
+            for (double v : row) r.add(redondear(v));
             out.add(r);
         }
         return out;
@@ -0,0 +1,50 @@
+package tools;
+
+import io.CargadorDatosJson;
+import io.SnapshotMercado;
+import model.Mercado;
+import validacion.ValidadorMercado;
+
+import java.nio.file.*;
+
+/**
+ * Convierte un mercado JSON (el de ConvertCsvToJson o GeneradorMercado) al snapshot binario de io.SnapshotMercado.
+ *
+ * Uso: ExportarSnapshot [entrada=data/mercado.json] [salida=data/mercado.bin] [float]
+ */
+public class ExportarSnapshot {
+
+    public static void main(String[] args) {
+        try {
+            String in   = args.length > 0 ? args[0] : "data/mercado.json";
+            String out  = args.length > 1 ? args[1] : "data/mercado.bin";
+            boolean simple = args.length > 2 && args[2].equalsIgnoreCase("float");
+
+            long t0 = System.nanoTime();
+            Mercado m = CargadorDatosJson.cargarMercado(in);
+            ValidadorMercado.validar(m);
+            long t1 = System.nanoTime();
+
+            Path outPath = Path.of(out);
+            SnapshotMercado.escribir(m, outPath, simple);
+            long t2 = System.nanoTime();
+
+            // se reabre contra la huella del origen para confirmar que el archivo es legible y medir la apertura
+            Mercado r = SnapshotMercado.abrir(outPath, m.huella());
+            long t3 = System.nanoTime();
+            if (r.activos.size() != m.activos.size())
+                throw new IllegalStateException("El snapshot reabierto no coincide con el origen");
+
+            System.out.println("OK -> " + outPath.toAbsolutePath());
+            System.out.println("Activos: " + m.activos.size() + (simple ? "  (matriz en float)" : ""));
+            System.out.printf("Tamaño:  %.1f MB%n", Files.size(outPath) / 1e6);
+            System.out.printf("JSON: %.0f ms | escritura: %.0f ms | apertura del snapshot: %.1f ms%n",
+                              (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
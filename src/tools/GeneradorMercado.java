@@ -0,0 +1,186 @@
+package tools;
+
+import com.google.gson.stream.JsonWriter;
+import io.CargadorDatosJson;
+import model.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Genera mercados sintéticos de N activos, determinísticos por semilla, con el mismo formato que data/mercado.json.
+ *
+ * Las correlaciones salen de un modelo de factores: cada activo carga sobre un factor de mercado,
+ * el factor de su sector y algunos factores de estilo (con signo, así también hay correlaciones negativas).
+ * rho = B·Bᵗ + diag(1 - |b_i|²) es semidefinida positiva con diagonal 1. Como |b_i|² <= R2_MAX,
+ * el menor autovalor es >= 1 - R2_MAX, margen que absorbe el redondeo a 6 decimales.
+ *
+ * Solo se guardan las cargas (n x factores); la matriz se escribe fila por fila, así un mercado
+ * de 20k activos (varios GB de JSON) nunca está entero en memoria.
+ *
+ * Uso: GeneradorMercado [n=1000] [semilla=42] [salida=data/mercado_n.json] [factoresEstilo=4]
+ */
+public class GeneradorMercado {
+
+    private static final int FACTORES_ESTILO = 4;
+    private static final double R2_MIN = 0.05, R2_MAX = 0.85;
+
+    // Proporciones de tipo, sector y montoMin tomadas de activos.csv (60 activos); los rangos de sigma
+    // son más anchos que los del CSV (todos entre 1% y 10%) para que el riesgo restrinja
+    private static final String[] TIPOS   = {"CEDEAR", "Obligacion Negociable", "ETF", "Accion", "Bono Soberano"};
+    private static final int[]    PESO_TIPO = {17, 12, 11, 10, 10};
+    private static final double[] SIGMA_MIN = {0.015, 0.015, 0.020, 0.030, 0.030};
+    private static final double[] SIGMA_MAX = {0.35,  0.12,  0.30,  0.60,  0.25};
+
+    private static final String[] SECTORES = {"Salud", "Agro", "Energia", "Consumo", "Tecnologia", "Finanzas"};
+    private static final int[]    PESO_SECTOR = {12, 11, 11, 9, 9, 8};
+
+    private static final double[] MONTOS = {10000, 15000, 20000, 25000, 30000, 35000, 40000, 45000, 50000};
+    private static final int[]    PESO_MONTO = {7, 6, 5, 7, 10, 5, 9, 6, 5};
+
+    public static void main(String[] args) {
+        try {
+            int n          = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+            long semilla   = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+            String out     = args.length > 2 ? args[2] : "data/mercado_" + n + ".json";
+            int factores   = args.length > 3 ? Integer.parseInt(args[3]) : FACTORES_ESTILO;
+
+            long t0 = System.nanoTime();
+            Path outPath = Path.of(out);
+            escribir(n, semilla, factores, outPath);
+
+            System.out.println("OK -> " + outPath.toAbsolutePath());
+            System.out.println("Activos: " + n + "  (semilla " + semilla + ", " + factores + " factores de estilo)");
+            System.out.println("Matriz:  " + n + " x " + n);
+            System.out.printf("Tamaño:  %.1f MB en %.1f s%n", Files.size(outPath) / 1e6, (System.nanoTime() - t0) / 1e9);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Mercado en memoria; es el mismo que se obtiene al cargar lo que escribe {@link #escribir} */
+    public static Mercado generar(int n, long semilla) {
+        return generar(n, semilla, FACTORES_ESTILO);
+    }
+
+    public static Mercado generar(int n, long semilla, int factoresEstilo) {
+        return generar(n, semilla, factoresEstilo, CargadorDatosJson.DISPOSICION);
+    }
+
+    /** La matriz se arma directamente en la disposición pedida, sin pasar por double[n][n] */
+    public static Mercado generar(int n, long semilla, int factoresEstilo, MatrizCorrelacion.Disposicion disposicion) {
+        Modelo mod = new Modelo(n, semilla, factoresEstilo);
+        return new Mercado(mod.activos, MatrizCorrelacion.desdeFilas(n, disposicion, mod::fila));
+    }
+
+    /** Escribe el mercado en formato JSON ({"activos": [...], "correlaciones": [[...]]}) fila por fila */
+    public static void escribir(int n, long semilla, int factoresEstilo, Path salida) throws IOException {
+        Modelo mod = new Modelo(n, semilla, factoresEstilo);
+        if (salida.getParent() != null) Files.createDirectories(salida.getParent());
+
+        try (JsonWriter w = new JsonWriter(new BufferedWriter(Files.newBufferedWriter(salida), 1 << 16))) {
+            w.beginObject();
+            w.name("activos").beginArray();
+            for (Activo a : mod.activos) {
+                w.beginObject()
+                 .name("ticker").value(a.ticker)
+                 .name("tipo").value(a.tipo)
+                 .name("sector").value(a.sector)
+                 .name("retorno").value(a.retorno)
+                 .name("sigma").value(a.sigma)
+                 .name("montoMin").value(a.montoMin)
+                 .endObject();
+            }
+            w.endArray();
+
+            w.name("correlaciones").beginArray();
+            double[] fila = new double[n];
+            for (int i = 0; i < n; i++) {
+                mod.fila(i, fila);
+                w.beginArray();
+                for (double v : fila) w.value(v);
+                w.endArray();
+            }
+            w.endArray();
+            w.endObject();
+        }
+    }
+
+    // ---------- Modelo de factores ----------
+
+    /** Activos y cargas factoriales; la matriz se reconstruye por filas a demanda */
+    private static final class Modelo {
+        final List<Activo> activos;
+        final double[][] cargas;     // [activo][mercado, sectores..., estilos...]
+
+        Modelo(int n, long semilla, int factoresEstilo) {
+            if (n <= 0) throw new IllegalArgumentException("n debe ser > 0");
+            if (factoresEstilo < 0) throw new IllegalArgumentException("factoresEstilo debe ser >= 0");
+            Random rnd = new Random(semilla);
+            int f = 1 + SECTORES.length + factoresEstilo;
+            int ancho = Math.max(3, String.valueOf(n - 1).length());
+
+            activos = new ArrayList<>(n);
+            cargas = new double[n][f];
+            for (int i = 0; i < n; i++) {
+                int t = elegir(rnd, PESO_TIPO);
+                int s = elegir(rnd, PESO_SECTOR);
+
+                // sigma log-uniforme en el rango del tipo; retorno creciente con el riesgo más ruido
+                double sigma = SIGMA_MIN[t] * Math.pow(SIGMA_MAX[t] / SIGMA_MIN[t], rnd.nextDouble());
+                double retorno = 0.03 + 0.25 * sigma + 0.025 * rnd.nextGaussian();
+                retorno = Math.max(-0.5, Math.min(0.9, retorno));
+                double montoMin = MONTOS[elegir(rnd, PESO_MONTO)];
+
+                String ticker = "SIM" + String.format("%0" + ancho + "d", i);
+                activos.add(new Activo(ticker, TIPOS[t], SECTORES[s],
+                                       redondear(retorno, 4), redondear(sigma, 4), montoMin));
+
+                // cargas sin escala: mercado y sector positivos, estilos con signo
+                double[] b = cargas[i];
+                b[0] = 0.3 + 0.7 * rnd.nextDouble();
+                b[1 + s] = 0.2 + 0.8 * rnd.nextDouble();
+                for (int k = 0; k < factoresEstilo; k++) b[1 + SECTORES.length + k] = 0.5 * rnd.nextGaussian();
+
+                // se escala para que la parte explicada por factores (|b|²) quede en [R2_MIN, R2_MAX]
+                double r2 = R2_MIN + (R2_MAX - R2_MIN) * rnd.nextDouble();
+                double norma2 = 0;
+                for (double v : b) norma2 += v * v;
+                double esc = Math.sqrt(r2 / norma2);
+                for (int k = 0; k < f; k++) b[k] *= esc;
+            }
+        }
+
+        /** Fila i de rho: producto de cargas fuera de la diagonal, 1 en la diagonal */
+        void fila(int i, double[] destino) {
+            double[] bi = cargas[i];
+            for (int j = 0; j < destino.length; j++) {
+                if (j == i) { destino[j] = 1.0; continue; }
+                double[] bj = cargas[j];
+                double acc = 0;
+                for (int k = 0; k < bi.length; k++) acc += bi[k] * bj[k];
+                destino[j] = redondear(acc, 6);
+            }
+        }
+    }
+
+    private static int elegir(Random rnd, int[] pesos) {
+        int total = 0;
+        for (int p : pesos) total += p;
+        int x = rnd.nextInt(total);
+        for (int k = 0; k < pesos.length; k++) {
+            x -= pesos[k];
+            if (x < 0) return k;
+        }
+        return pesos.length - 1;
+    }
+
+    private static double redondear(double v, int decimales) {
+        double f = Math.pow(10, decimales);
+        return Math.round(v * f) / f;
+    }
+}
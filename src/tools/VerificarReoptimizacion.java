@@ -0,0 +1,86 @@
+package tools;
+
+import io.CargadorDatosJson;
+import model.*;
+import optimizacion.BBPortafolio;
+import optimizacion.OpcionesBusqueda;
+
+import java.util.*;
+
+/**
+ * Regresión de BBPortafolio.reoptimizar: sobre submercados al azar del mercado dado, cambia el retorno
+ * de un activo y compara la re-optimización (con y sin el mercado anterior) contra la corrida en frío.
+ * La mitad de los casos pone el riesgo máximo justo en el riesgo del óptimo en frío, donde un redondeo
+ * que dependa del orden de visita cambia la respuesta. Falla (código 1) si alguna re-optimización
+ * devuelve menos retorno que la corrida en frío.
+ *
+ * Uso: VerificarReoptimizacion [mercado=data/mercado.json] [casos=300] [semilla=1]
+ */
+public class VerificarReoptimizacion {
+
+    public static void main(String[] args) {
+        String ruta = args.length > 0 ? args[0] : "data/mercado.json";
+        int casos   = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        long semilla = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+
+        Mercado base = CargadorDatosJson.cargarMercado(ruta);
+        Random rnd = new Random(semilla);
+        Map<String, Double> topeTipo = new HashMap<>(), topeSector = new HashMap<>();
+        for (Activo a : base.activos) {
+            topeTipo.put(a.tipo, 0.7);
+            topeSector.put(a.sector, 0.6);
+        }
+
+        int comparados = 0, peores = 0, mejores = 0;
+        for (int c = 0; c < casos; c++) {
+            Mercado m = submercado(base, 12 + rnd.nextInt(Math.max(1, Math.min(14, base.activos.size() - 11))), rnd);
+            Perfil p = new Perfil(250000, 0.2 + 0.3 * rnd.nextDouble(), topeTipo, topeSector, "Conservador", 0.0)
+                    .conRiesgoMax(0.06 + 0.1 * rnd.nextDouble());
+            OpcionesBusqueda op = OpcionesBusqueda.secuencial();
+            op.estadisticas = true;
+
+            Activo x = m.activos.get(rnd.nextInt(m.activos.size()));
+            Mercado nuevo = m.cambios().retorno(x.ticker, x.retorno * (0.8 + 0.4 * rnd.nextDouble())).aplicar();
+            BBPortafolio.Resultado frio, anterior;
+            try {
+                if (c % 2 == 1) {
+                    BBPortafolio.Resultado r = BBPortafolio.maximizarRetorno(nuevo, p, op);
+                    if (r.mejor == null) continue;
+                    p = p.conRiesgoMax(r.riesgo);
+                }
+                anterior = BBPortafolio.maximizarRetorno(m, p, op);
+                frio = BBPortafolio.maximizarRetorno(nuevo, p, op);
+            } catch (IllegalArgumentException sinSolucion) {
+                continue;
+            }
+            comparados++;
+            for (Mercado previo : new Mercado[]{ m, null }) {
+                BBPortafolio.Resultado r = BBPortafolio.reoptimizar(nuevo, p, anterior, previo, op);
+                if (r.retorno < frio.retorno - 1e-9) {
+                    peores++;
+                    System.out.printf(Locale.US, "caso %d (%s%s): frío %.6f, re-optimizado %.6f, probado=%s%n",
+                            c, x.ticker, previo == null ? ", solo arranque" : "", frio.retorno, r.retorno, r.optimoProbado);
+                } else if (r.retorno > frio.retorno + 1e-9) {
+                    mejores++;
+                }
+            }
+        }
+        System.out.printf("Casos: %d  re-optimización peor que en frío: %d  mejor (la poda por riesgo es tentativa): %d%n",
+                comparados, peores, mejores);
+        if (peores > 0) System.exit(1);
+    }
+
+    private static Mercado submercado(Mercado m, int n, Random rnd) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < m.activos.size(); i++) ids.add(i);
+        Collections.shuffle(ids, rnd);
+        n = Math.min(n, ids.size());
+        List<Activo> activos = new ArrayList<>(n);
+        double[][] rho = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            activos.add(m.activos.get(ids.get(i)));
+            for (int j = 0; j < n; j++) rho[i][j] = m.rho(ids.get(i), ids.get(j));
+        }
+        return new Mercado(activos, rho);
+    }
+}
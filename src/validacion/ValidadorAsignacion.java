@@ -10,42 +10,41 @@ public final class ValidadorAsignacion {
         Objects.requireNonNull(m); Objects.requireNonNull(p); Objects.requireNonNull(a);
 
         // --- sumas básicas
-        double total = 0.0;
-        for (double v : a.getMontos().values()) total += v;
+        double total = a.totalInvertido();
 
         if (total - p.presupuesto > 1e-9) {
             throw new IllegalArgumentException(String.format("Excede presupuesto: %.2f > %.2f", total, p.presupuesto));
         }
 
-        // --- por activo: montoMin y tope por activo
-        double topePorActivoAbs = p.maxPorActivo * p.presupuesto;
         for (Map.Entry<String,Double> e : a.getMontos().entrySet()) {
-            String tkr = e.getKey();
-            double monto = e.getValue();
-            if (monto <= 0) continue;
+            if (e.getValue() > 0 && m.indexOf(e.getKey()) < 0) {
+                throw new IllegalArgumentException("Ticker inexistente: " + e.getKey());
+            }
+        }
 
-            int idx = m.indexOf(tkr);
-            if (idx < 0) throw new IllegalArgumentException("Ticker inexistente: " + tkr);
-            Activo act = m.activos.get(idx);
+        // de acá en adelante solo se recorre el soporte (k <= 6 activos), no el mercado
+        Asignacion.Soporte s = a.soporte(m);
+
+        // --- por activo: montoMin y tope por activo
+        double topePorActivoAbs = p.maxPorActivo * p.presupuesto;
+        for (int t = 0; t < s.k; t++) {
+            Activo act = m.activos.get(s.indices[t]);
+            double monto = s.montos[t];
 
             if (monto + 1e-9 < act.montoMin) {
-                throw new IllegalArgumentException(String.format("Monto < montoMin en %s: %.2f < %.2f", tkr, monto, act.montoMin));
+                throw new IllegalArgumentException(String.format("Monto < montoMin en %s: %.2f < %.2f", act.ticker, monto, act.montoMin));
             }
             if (monto - topePorActivoAbs > 1e-9) {
-                throw new IllegalArgumentException(String.format("Excede tope por activo en %s: %.2f > %.2f", tkr, monto, topePorActivoAbs));
+                throw new IllegalArgumentException(String.format("Excede tope por activo en %s: %.2f > %.2f", act.ticker, monto, topePorActivoAbs));
             }
         }
 
         // --- límites por tipo/sector
         Map<String,Double> usoTipo = new HashMap<>();
         Map<String,Double> usoSector = new HashMap<>();
-        for (Map.Entry<String,Double> e : a.getMontos().entrySet()) {
-            String tkr = e.getKey();
-            double monto = e.getValue();
-            if (monto <= 0) continue;
-
-            int idx = m.indexOf(tkr);
-            Activo act = m.activos.get(idx);
+        for (int t = 0; t < s.k; t++) {
+            Activo act = m.activos.get(s.indices[t]);
+            double monto = s.montos[t];
 
             double nuevoTipo   = usoTipo.getOrDefault(act.tipo, 0.0) + monto;
             double nuevoSector = usoSector.getOrDefault(act.sector, 0.0) + monto;
@@ -67,24 +66,18 @@ public final class ValidadorAsignacion {
         }
 
         // --- riesgo
-        double sigma = CalculadoraRiesgo.riesgoCartera(m, a, p.presupuesto);
+        double sigma = CalculadoraRiesgo.riesgo(m, s, p.presupuesto);
         if (sigma - p.riesgoMax > 1e-9) {
             throw new IllegalArgumentException(String.format("Riesgo excedido: sigma %.3f > max %.3f", sigma, p.riesgoMax));
         }
 
-        
-
-        
-        int cantidadActivos = 0;
-        for (double monto : a.getMontos().values()) {
-            if (monto > 0.0) cantidadActivos++;
-        }
+        int cantidadActivos = s.k;
         if (cantidadActivos < 3 || cantidadActivos > 6) {
             throw new IllegalArgumentException("Cantidad de activos debe estar entre 3 y 6 (actual: " + cantidadActivos + ")");
         }
 
         
-        double retornoCartera = CalculadoraRetorno.retornoCartera(m, a, p.presupuesto);
+        double retornoCartera = CalculadoraRetorno.retorno(m, s, p.presupuesto);
         double retornoRequerido = Math.max(p.retornoMin, p.retornoMinDeseado);
         if (retornoCartera + 1e-12 < retornoRequerido) {
             throw new IllegalArgumentException(
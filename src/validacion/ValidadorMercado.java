@@ -11,21 +11,19 @@ public final class ValidadorMercado {
         if (m == null) throw new IllegalArgumentException("Mercado nulo");
         int n = m.activos.size();
         if (n == 0) throw new IllegalArgumentException("No hay activos");
-        if (m.rho == null) throw new IllegalArgumentException("Matriz de correlaciones nula");
-        if (m.rho.length != n) throw new IllegalArgumentException("rho no es n x n (filas != n)");
+        var rho = m.correlaciones;
+        if (rho == null) throw new IllegalArgumentException("Matriz de correlaciones nula");
+        if (rho.n() != n) throw new IllegalArgumentException("rho no es n x n (filas != n)");
 
+        // 1) Chequeos de matriz (por filas, que es barato en cualquier disposición)
+        double[] fila = new double[n];
         for (int i=0;i<n;i++){
-            if (m.rho[i] == null || m.rho[i].length != n)
-                throw new IllegalArgumentException("rho no es n x n (fila "+i+")");
-        }
-
-        // 1) Chequeos de matriz
-        for (int i=0;i<n;i++){
+            rho.fila(i, fila);
             // diagonal ~ 1
-            if (Math.abs(m.rho[i][i] - 1.0) > 1e-6)
+            if (Math.abs(fila[i] - 1.0) > 1e-6)
                 throw new IllegalArgumentException("rho["+i+"]["+i+"] != 1");
             for (int j=i+1;j<n;j++){
-                double a = m.rho[i][j], b = m.rho[j][i];
+                double a = fila[j], b = rho.get(j, i);
                 if (Math.abs(a - b) > 1e-6)
                     throw new IllegalArgumentException("rho no simétrica en ("+i+","+j+")");
                 if (a < -1.0 - EPS || a > 1.0 + EPS)
@@ -41,15 +39,50 @@ public final class ValidadorMercado {
                 throw new IllegalArgumentException("Ticker vacío en índice " + i);
             if (!vistos.add(a.ticker))
                 throw new IllegalArgumentException("Ticker duplicado: " + a.ticker);
+            activo(a);
+        }
+    }
 
-            if (a.retorno < -1.0 || a.retorno > 1.0)
-                throw new IllegalArgumentException("Retorno fuera de rango en "+a.ticker+": "+a.retorno);
-
-            if (a.sigma <= 0.0 || a.sigma > 1.5)
-                throw new IllegalArgumentException("Sigma fuera de rango en "+a.ticker+": "+a.sigma);
+    /**
+     * Valida una versión armada con Mercado.Delta a partir de anterior (ya válido): solo los activos y
+     * las correlaciones que cambiaron. Si las versiones no son comparables valida todo.
+     */
+    public static void validarCambios(Mercado anterior, Mercado nuevo){
+        if (nuevo == null) throw new IllegalArgumentException("Mercado nulo");
+        int n = nuevo.activos.size();
+        long[] pares = anterior == null || anterior.activos.size() != n ? null
+                     : MatrizCorrelacion.diferencias(anterior.correlaciones, nuevo.correlaciones);
+        if (pares == null) { validar(nuevo); return; }
 
-            if (a.montoMin <= 0.0)
-                throw new IllegalArgumentException("montoMin debe ser > 0 en "+a.ticker+": "+a.montoMin);
+        for (int i=0;i<n;i++){
+            var a = nuevo.activos.get(i);
+            if (a == anterior.activos.get(i)) continue;
+            if (!a.ticker.equals(anterior.activos.get(i).ticker)) { validar(nuevo); return; }
+            activo(a);
         }
+        var rho = nuevo.correlaciones;
+        for (long x : pares){
+            int i = (int) (x >>> 32), j = (int) x;
+            double a = rho.get(i, j);
+            if (i == j) {
+                if (Math.abs(a - 1.0) > 1e-6) throw new IllegalArgumentException("rho["+i+"]["+i+"] != 1");
+                continue;
+            }
+            if (Math.abs(a - rho.get(j, i)) > 1e-6)
+                throw new IllegalArgumentException("rho no simétrica en ("+i+","+j+")");
+            if (a < -1.0 - EPS || a > 1.0 + EPS)
+                throw new IllegalArgumentException("rho fuera de [-1,1] en ("+i+","+j+"): "+a);
+        }
+    }
+
+    private static void activo(Activo a){
+        if (a.retorno < -1.0 || a.retorno > 1.0)
+            throw new IllegalArgumentException("Retorno fuera de rango en "+a.ticker+": "+a.retorno);
+
+        if (a.sigma <= 0.0 || a.sigma > 1.5)
+            throw new IllegalArgumentException("Sigma fuera de rango en "+a.ticker+": "+a.sigma);
+
+        if (a.montoMin <= 0.0)
+            throw new IllegalArgumentException("montoMin debe ser > 0 en "+a.ticker+": "+a.montoMin);
     }
 }